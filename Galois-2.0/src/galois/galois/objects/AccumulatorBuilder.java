@@ -21,9 +21,9 @@ File: AccumulatorBuilder.java
 
 package galois.objects;
 
-import galois.runtime.Callback;
 import galois.runtime.GaloisRuntime;
 import galois.runtime.Iteration;
+import galois.runtime.LogAction;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -79,6 +79,12 @@ public class AccumulatorBuilder {
   }
 
   private static class ConcurrentAccumulator implements Accumulator {
+    private static final LogAction subtract = new LogAction() {
+      @Override
+      public void call(Object value, Object unused0, Object unused1, int delta) {
+        ((AtomicInteger) value).addAndGet(-delta);
+      }
+    };
     private AtomicInteger value;
 
     public ConcurrentAccumulator(int v) {
@@ -95,11 +101,7 @@ public class AccumulatorBuilder {
       if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
         Iteration it = Iteration.getCurrentIteration();
         if (it != null)
-          GaloisRuntime.getRuntime().onUndo(it, new Callback() {
-            public void call() {
-              value.addAndGet(-delta);
-            }
-          });
+          GaloisRuntime.getRuntime().onUndo(it, subtract, value, null, null, delta);
       }
       value.addAndGet(delta);
     }
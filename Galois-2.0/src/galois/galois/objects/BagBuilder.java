@@ -21,9 +21,9 @@ File: Bag.java
 
 package galois.objects;
 
-import galois.runtime.Callback;
 import galois.runtime.GaloisRuntime;
 import galois.runtime.Iteration;
+import galois.runtime.LogAction;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -237,6 +237,12 @@ public class BagBuilder<T> {
   }
 
   private static class ConcurrentBag<T> implements Bag<T> {
+    private static final LogAction markAbsent = new LogAction() {
+      @Override
+      public void call(Object node, Object unused0, Object unused1, int unused2) {
+        ((Node<?>) node).absent = true;
+      }
+    };
     private final AtomicReference<Node<T>> head;
     private final GaloisRuntime runtime;
 
@@ -264,13 +270,7 @@ public class BagBuilder<T> {
       } while (!head.compareAndSet(cur, node));
 
       if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-        final Node<T> n = node;
-        runtime.onUndo(Iteration.getCurrentIteration(), new Callback() {
-          @Override
-          public void call() {
-            n.absent = true;
-          }
-        });
+        runtime.onUndo(Iteration.getCurrentIteration(), markAbsent, node, null, null, 0);
       }
       return true;
     }
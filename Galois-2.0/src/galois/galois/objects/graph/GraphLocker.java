@@ -28,9 +28,9 @@ import fn.Lambda2Void;
 import fn.LambdaVoid;
 import galois.objects.GObject;
 import galois.objects.MethodFlag;
-import galois.runtime.Callback;
 import galois.runtime.GaloisRuntime;
 import galois.runtime.Iteration;
+import galois.runtime.LogAction;
 
 class GraphLocker {
 
@@ -39,6 +39,13 @@ class GraphLocker {
   static final InNeighborsLambda2 inNeighbors2 = new InNeighborsLambda2();
   static final LockLambda lock = new LockLambda();
 
+  // undo actions: operands are passed through the undo log
+  static final LogAction removeNode = new RemoveNodeAction();
+  static final LogAction restoreNodeData = new RestoreNodeDataAction();
+  static final LogAction restoreNode = new RestoreNodeAction();
+  static final LogAction addNeighbor = new AddNeighborAction();
+  static final LogAction removeNeighbor = new RemoveNeighborAction();
+
   // createNode: no prolog
   static <N extends GObject> void createNodeEpilog(GNode<N> src, byte flags) {
     acquireLock(src, flags);
@@ -50,12 +57,7 @@ class GraphLocker {
 
   static <N extends GObject> void addNodeEpilog(final Graph<N> graph, final GNode<N> src, byte flags) {
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          graph.remove(src, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), removeNode, graph, src, null, 0);
     }
   }
 
@@ -91,12 +93,7 @@ class GraphLocker {
 
   static <N extends GObject> void setNodeDataEpilog(final GNode<N> src, final N data, byte flags) {
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          src.setData(data, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), restoreNodeData, src, data, null, 0);
     }
   }
 
@@ -135,15 +132,7 @@ class GraphLocker {
     if (graph.isDirected()) {
       graph.mapInNeighbors(src, new InNeighborsLambda<N>(neighbors), MethodFlag.NONE);
     }
-    GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-      @Override
-      public void call() {
-        graph.add(src, MethodFlag.NONE);
-        for (final GNode<N> e : neighbors) {
-          graph.addNeighbor(src, e, MethodFlag.NONE);
-        }
-      }
-    });
+    GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), restoreNode, graph, src, neighbors, 0);
   }
 
   //addNeighbor is not supported by edge graphs
@@ -155,24 +144,14 @@ class GraphLocker {
   static <N extends GObject> void removeNeighborEpilog(final Graph<N> graph, final GNode<N> src, final GNode<N> dst,
       byte flags) {
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          graph.addNeighbor(src, dst, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), addNeighbor, graph, src, dst, 0);
     }
   }
 
   static <N extends GObject> void addNeighborEpilog(final Graph<N> graph, final GNode<N> src, final GNode<N> dst,
       byte flags) {
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          graph.removeNeighbor(src, dst, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), removeNeighbor, graph, src, dst, 0);
     }
   }
 
@@ -250,4 +229,49 @@ class GraphLocker {
       it.acquire(arg0);
     }
   }
+
+  @SuppressWarnings("unchecked")
+  private static class RemoveNodeAction implements LogAction {
+    @Override
+    public void call(Object graph, Object src, Object unused0, int unused1) {
+      ((Graph<GObject>) graph).remove((GNode<GObject>) src, MethodFlag.NONE);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class RestoreNodeDataAction implements LogAction {
+    @Override
+    public void call(Object src, Object data, Object unused0, int unused1) {
+      ((GNode<GObject>) src).setData((GObject) data, MethodFlag.NONE);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class RestoreNodeAction implements LogAction {
+    @Override
+    public void call(Object g, Object s, Object neighbors, int unused) {
+      Graph<GObject> graph = (Graph<GObject>) g;
+      GNode<GObject> src = (GNode<GObject>) s;
+      graph.add(src, MethodFlag.NONE);
+      for (GNode<GObject> e : (Collection<GNode<GObject>>) neighbors) {
+        graph.addNeighbor(src, e, MethodFlag.NONE);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class AddNeighborAction implements LogAction {
+    @Override
+    public void call(Object graph, Object src, Object dst, int unused) {
+      ((Graph<GObject>) graph).addNeighbor((GNode<GObject>) src, (GNode<GObject>) dst, MethodFlag.NONE);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class RemoveNeighborAction implements LogAction {
+    @Override
+    public void call(Object graph, Object src, Object dst, int unused) {
+      ((Graph<GObject>) graph).removeNeighbor((GNode<GObject>) src, (GNode<GObject>) dst, MethodFlag.NONE);
+    }
+  }
 }
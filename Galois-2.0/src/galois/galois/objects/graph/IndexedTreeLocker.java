@@ -23,11 +23,12 @@ package galois.objects.graph;
 
 import galois.objects.GObject;
 import galois.objects.MethodFlag;
-import galois.runtime.Callback;
 import galois.runtime.GaloisRuntime;
 import galois.runtime.Iteration;
+import galois.runtime.LogAction;
 
 class IndexedTreeLocker extends GraphLocker {
+  private static final LogAction setNeighbor = new SetNeighborAction();
 
   static <N extends GObject> void removeNodeProlog(GNode<N> src, byte flags) {
     acquireLock(src, flags);
@@ -64,12 +65,15 @@ class IndexedTreeLocker extends GraphLocker {
       acquireLock(child, flags);
     }
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          graph.setNeighbor(src, child, idx, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), setNeighbor, graph, src, child, idx);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class SetNeighborAction implements LogAction {
+    @Override
+    public void call(Object graph, Object src, Object child, int idx) {
+      ((IndexedGraph<GObject>) graph).setNeighbor((GNode<GObject>) src, (GNode<GObject>) child, idx, MethodFlag.NONE);
     }
   }
 }
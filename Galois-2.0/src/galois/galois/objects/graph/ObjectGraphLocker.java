@@ -95,12 +95,7 @@ final class ObjectGraphLocker extends GraphLocker {
 
   static <N extends GObject> void addEdgeEpilog(final Graph<N> graph, final GNode<N> src, final GNode<N> dst, byte flags) {
     if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), new Callback() {
-        @Override
-        public void call() {
-          graph.removeNeighbor(src, dst, MethodFlag.NONE);
-        }
-      });
+      GaloisRuntime.getRuntime().onUndo(Iteration.getCurrentIteration(), removeNeighbor, graph, src, dst, 0);
     }
   }
 
@@ -27,27 +27,48 @@ import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import util.CPUFunctions;
 import util.CollectionMath;
 import util.Launcher;
 import util.Statistics;
+import util.SystemProperties;
 import fn.Lambda2Void;
 import galois.runtime.wl.Worklist;
 
 abstract class AbstractConcurrentExecutor<T> implements Executor {
   private static final boolean cpuFunctionsLoaded = GaloisRuntime.getRuntime().moreStats() && CPUFunctions.isLoaded();
+  /**
+   * Number of times an idle process rechecks for work before parking
+   */
+  private static final int IDLE_SPIN_ROUNDS = SystemProperties.getIntProperty("idleSpinRounds", 256);
+  /**
+   * Added to {@link #idleState} when a process becomes idle
+   */
+  private static final long IDLE = (1L << 32) + 1;
+  /**
+   * Added to {@link #idleState} when a process becomes active again
+   */
+  private static final long ACTIVE = (1L << 32) - 1;
 
   protected Worklist<T> worklist;
   protected Lambda2Void<T, ForeachContext<T>> body;
+  /**
+   * live counters, null if metrics are disabled
+   */
+  protected final LoopMetrics metrics;
   protected final int numThreads;
-  private final ReentrantLock lock;
-  private final Condition moreWork;
   private final List<Process> processes;
-  private final AtomicInteger numDone;
+  /**
+   * Number of idle processes in the low 32 bits and a version number, incremented on
+   * every change, in the high 32 bits. Two equal reads mean that no process went idle or
+   * became active in between.
+   */
+  private final AtomicLong idleState;
+  private volatile boolean terminated;
+  private int wakeupHint;
   private final Deque<Callback> suspendThunks;
 
   protected boolean yield;
@@ -61,9 +82,8 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
 
   protected AbstractConcurrentExecutor() {
     numThreads = GaloisRuntime.getRuntime().getMaxThreads();
-    numDone = new AtomicInteger();
-    lock = new ReentrantLock();
-    moreWork = lock.newCondition();
+    metrics = LoopMetrics.getInstance();
+    idleState = new AtomicLong();
     processes = new ArrayList<Process>();
     suspendThunks = new ArrayDeque<Callback>();
   }
@@ -135,12 +155,18 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
     suspendListener = null;
     idleCounted = false;
     suspendThunks.clear();
-    numDone.set(0);
+    idleState.set(0);
+    terminated = false;
   }
 
   public final IterationStatistics call(Lambda2Void<T, ForeachContext<T>> body, Worklist<T> worklist)
       throws ExecutionException {
     initialize(body, worklist);
+    if (metrics != null) {
+      metrics.loopStarted();
+    }
+    ConflictProfiler prevProfiler = ConflictProfiler.start();
+    long loopStart = Trace.ENABLED ? System.nanoTime() : 0;
 
     try {
       idleStats = new IdlenessStatistics();
@@ -184,6 +210,7 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
       IterationStatistics stats = new IterationStatistics();
       for (Process p : processes) {
         stats.putStats(p.thread, p.numCommitted, p.numAborted);
+        stats.putHistograms(p.iterationTimes, p.retryDistances, p.locksPerIteration, p.undoLogLengths);
       }
 
       return stats;
@@ -191,6 +218,12 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
       throw new ExecutionException(e);
     } catch (Exception e) {
       throw new ExecutionException(e);
+    } finally {
+      Launcher.getLauncher().addStats(ConflictProfiler.stop(prevProfiler));
+      if (Trace.ENABLED) {
+        Trace.record(Trace.LOOP, loopStart);
+        Trace.dump();
+      }
     }
   }
 
@@ -198,41 +231,54 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
     suspendThunks.add(callback);
   }
 
+  /**
+   * Wakes up one parked idle process, if any.
+   */
   protected void wakeupOne() {
-    lock.lock();
-    try {
-      moreWork.signal();
-    } finally {
-      lock.unlock();
+    int size = processes.size();
+    int start = wakeupHint;
+    for (int i = 0; i < size; i++) {
+      int index = start + i;
+      if (index >= size) {
+        index -= size;
+      }
+      Process p = processes.get(index);
+      if (p.parked) {
+        wakeupHint = index + 1 < size ? index + 1 : 0;
+        LockSupport.unpark(p.thread);
+        return;
+      }
     }
   }
 
+  /**
+   * Wakes up all parked idle processes.
+   */
   protected void wakeupAll() {
-    lock.lock();
-    try {
-      moreWork.signalAll();
-    } finally {
-      lock.unlock();
+    for (int i = 0; i < processes.size(); i++) {
+      Process p = processes.get(i);
+      if (p.parked) {
+        LockSupport.unpark(p.thread);
+      }
     }
   }
 
+  /**
+   * Forces all processes to finish the current round.
+   */
   protected void makeAllDone() {
-    // Can't use set() because there is a rare possibility
-    // that it would happen between an increment decrement
-    // pair in isDone and prevent some threads from leaving
-    int n;
-    do {
-      n = numDone.get();
-    } while (!numDone.compareAndSet(n, numThreads));
+    terminated = true;
   }
 
   protected boolean someDone() {
-    return numDone.get() > 0;
+    return (int) idleState.get() > 0;
   }
 
   protected abstract class Process implements Callable<Object>, ForeachContext<T> {
     private final int id;
-    Thread thread;
+    private final int socketId;
+    volatile Thread thread;
+    private volatile boolean parked;
     protected int numCommitted;
     protected int numAborted;
 
@@ -243,8 +289,21 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
 
     private int[] cpuIds;
 
+    /**
+     * per thread histograms, merged into {@link IterationStatistics} at the end of the loop
+     */
+    protected final Histogram iterationTimes;
+    protected final Histogram retryDistances;
+    protected final Histogram locksPerIteration;
+    protected final Histogram undoLogLengths;
+
     protected Process(int id) {
       this.id = id;
+      this.socketId = Topology.getSocket(id);
+      iterationTimes = new Histogram();
+      retryDistances = new Histogram();
+      locksPerIteration = new Histogram();
+      undoLogLengths = new Histogram();
       if (cpuFunctionsLoaded)
         cpuIds = new int[256];
     }
@@ -281,53 +340,101 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
       waitStart = System.nanoTime();
     }
 
+    protected final long getWaitStart() {
+      return waitStart;
+    }
+
     protected final void stopWaiting() {
-      accumWait += System.nanoTime() - waitStart;
+      long waited = System.nanoTime() - waitStart;
+      accumWait += waited;
+      if (metrics != null) {
+        metrics.add(id, LoopMetrics.IDLE_NANOS, waited);
+      }
     }
 
+    /**
+     * Adds to a live counter of this process if metrics are enabled.
+     * 
+     * @param counter  one of the counters of {@link LoopMetrics}
+     * @param delta    amount to add
+     */
+    protected final void count(int counter, long delta) {
+      if (metrics != null) {
+        metrics.add(id, counter, delta);
+      }
+    }
+
+    /**
+     * Returns if there is no more work for this round, waiting for more work if
+     * necessary.
+     * 
+     * <p>
+     * Termination is detected without locks: the round is over when a process observes
+     * that all processes are idle and that the worklist is empty, and no process has
+     * changed between idle and active (as witnessed by the version in
+     * <code>idleState</code>) while it looked at the worklist. Only active processes add
+     * to the worklist, so the worklist cannot change during that interval. Idle processes
+     * spin briefly and then park; processes adding work unpark one of them.
+     * </p>
+     * 
+     * @return  true if this process should finish the current round
+     * @throws InterruptedException  if the thread was interrupted while waiting
+     */
     protected final boolean isDone() throws InterruptedException {
-      lock.lock();
+      if (terminated) {
+        return true;
+      }
+
+      idleState.addAndGet(IDLE);
+      startWaiting();
       try {
-        // Encountered an error by another thread?
-        if (numDone.incrementAndGet() > numThreads) {
-          return true;
-        }
+        int rounds = 0;
+        while (true) {
+          // Encountered an error by another thread or truly done
+          if (terminated) {
+            return true;
+          }
+
+          long state = idleState.get();
+          boolean empty = worklist.isEmpty();
+          if (!empty) {
+            // More work to do!
+            idleState.addAndGet(ACTIVE);
+            return false;
+          }
 
-        // Last man: safe to check global termination property
-        if (numDone.get() == numThreads) {
-          if (worklist.isEmpty()) {
+          if ((int) state == numThreads && idleState.get() == state) {
+            // Done, truly
+            terminated = true;
             wakeupAll();
             return true;
-          } else {
-            numDone.decrementAndGet();
-            return false;
           }
-        }
 
-        // Otherwise, wait for some work
-        while (numDone.get() < numThreads && worklist.isEmpty()) {
-          startWaiting();
+          if (rounds < IDLE_SPIN_ROUNDS) {
+            rounds++;
+            continue;
+          }
+
+          parked = true;
           try {
-            moreWork.await();
+            // Recheck after publishing that we are parked, so that a concurrent
+            // add either sees the flag or we see its work
+            if (!terminated && worklist.isEmpty() && (int) idleState.get() < numThreads) {
+              LockSupport.park(this);
+            }
           } finally {
-            stopWaiting();
+            parked = false;
           }
-        }
 
-        if (numDone.get() == numThreads) {
-          // Done, truly
-          wakeupAll();
-          return true;
-        } else if (numDone.get() > numThreads) {
-          // Error by another thread, finish up
-          return true;
-        } else {
-          // More work to do!
-          numDone.decrementAndGet();
-          return false;
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
         }
       } finally {
-        lock.unlock();
+        if (Trace.ENABLED) {
+          Trace.record(Trace.IDLE, waitStart);
+        }
+        stopWaiting();
       }
     }
 
@@ -335,6 +442,11 @@ abstract class AbstractConcurrentExecutor<T> implements Executor {
     public int getThreadId() {
       return id;
     }
+
+    @Override
+    public int getSocketId() {
+      return socketId;
+    }
   }
 
   private static class CpuStatistics extends Statistics {
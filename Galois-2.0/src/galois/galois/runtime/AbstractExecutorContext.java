@@ -45,6 +45,11 @@ public abstract class AbstractExecutorContext<T> implements ForeachContext<T> {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public int getSocketId() {
+    return 0;
+  }
+
   @Override
   public void suspendWith(Callback call) {
     throw new UnsupportedOperationException();
@@ -29,13 +29,49 @@ import galois.objects.MethodFlag;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
+import util.SystemProperties;
+
 abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
   protected static Logger logger = Logger.getLogger("galois.runtime.Executor");
 
+  private static final int LOCK_COALESCING = SystemProperties.getIntProperty("lockCoalescing", 0);
+  /**
+   * Whether to keep histograms of iteration times and sizes, see {@link IterationStatistics}
+   */
+  private static final boolean HISTOGRAMS = SystemProperties.getBooleanProperty("iterationHistograms", true);
+
   protected int maxIterations;
+  protected ContentionManager contentionManager;
+
+  /**
+   * number of consecutive commits a thread may keep its locks for, 0 releases them on every commit
+   */
+  protected int lockCoalescing;
 
   protected AbstractGaloisExecutor() {
     this.maxIterations = GaloisRuntime.getRuntime().getMaxIterations();
+    this.contentionManager = ContentionManager.newDefault();
+    this.lockCoalescing = LOCK_COALESCING;
+  }
+
+  /**
+   * Sets the contention manager used to resolve conflicts and to back off after aborts.
+   * 
+   * @param contentionManager  the contention manager
+   */
+  protected void setContentionManager(ContentionManager contentionManager) {
+    this.contentionManager = contentionManager;
+  }
+
+  /**
+   * Sets the number of consecutive commits a thread may keep the abstract locks of its
+   * iterations for. Locks are released earlier if another thread requests one of them
+   * or if the thread runs out of work.
+   * 
+   * @param lockCoalescing  the number of commits, 0 releases locks on every commit
+   */
+  protected void setLockCoalescing(int lockCoalescing) {
+    this.lockCoalescing = lockCoalescing;
   }
 
   protected int getMaxIterations() {
@@ -77,9 +113,45 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
     it.addUndoAction(action);
   }
 
-  // private static int lockCoalescing =
-  // SystemProperties.getIntProperty("lockCoalescing", 0);
-  private static final int lockCoalescing = 0;
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    it.addUndoAction(action, arg0, arg1, arg2, arg3);
+  }
+
+  /**
+   * Commit actions of {@link GaloisProcess#add(Object, byte)}, {@link GaloisProcess#finish()}
+   * and {@link GaloisProcess#suspendWith(Callback)}. Operands are passed through the
+   * iteration's log so recording them does not allocate.
+   */
+  private final LogAction addAction = new LogAction() {
+    @SuppressWarnings("unchecked")
+    @Override
+    public void call(Object item, Object ctx, Object unused, int unused2) {
+      worklist.add((T) item, (ForeachContext<T>) ctx);
+      if (metrics != null) {
+        metrics.add(((ForeachContext<T>) ctx).getThreadId(), LoopMetrics.ADDS, 1);
+      }
+      if (someDone()) {
+        wakeupOne();
+      }
+    }
+  };
+
+  private final LogAction finishAction = new LogAction() {
+    @Override
+    public void call(Object unused0, Object unused1, Object unused2, int unused3) {
+      finish = true;
+      yield = true;
+    }
+  };
+
+  private final LogAction suspendWithAction = new LogAction() {
+    @Override
+    public void call(Object call, Object unused1, Object unused2, int unused3) {
+      addSuspendThunk((Callback) call);
+      yield = true;
+    }
+  };
 
   protected class GaloisProcess extends Process {
     private Iteration currentIteration;
@@ -87,6 +159,11 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
     private boolean first;
     private int lastAbort;
     private int consecAborts;
+    private int commitsWithoutRelease;
+    private int numStarted;
+    private long iterationStart;
+    private T lastAborted;
+    private int lastAbortedAt;
 
     public GaloisProcess(int id) {
       super(id);
@@ -113,51 +190,111 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
       }
 
       if (item == null) {
-        commitIteration(currentIteration, iterationId, item, true);
+        // out of work, don't sit on coalesced locks
+        releaseCoalescedLocks();
+      } else {
+        count(LoopMetrics.POLLS, 1);
       }
       return item;
     }
 
+    /**
+     * Releases the locks that lock coalescing kept after the last commit of this process.
+     */
+    protected final void releaseCoalescedLocks() {
+      commitsWithoutRelease = 0;
+      if (currentIteration != null) {
+        commitIteration(currentIteration, iterationId, null, true);
+      }
+    }
+
+    /**
+     * Marks the start of an attempt to execute the given item.
+     * 
+     * @param item  the item or null if not known
+     */
+    protected final void startIteration(T item) {
+      if (HISTOGRAMS) {
+        numStarted++;
+        if (item != null && item == lastAborted) {
+          retryDistances.add(numStarted - lastAbortedAt - 1);
+          lastAborted = null;
+        }
+        iterationStart = System.nanoTime();
+      }
+    }
+
+    private void recordAttempt() {
+      if (HISTOGRAMS) {
+        locksPerIteration.add(currentIteration.getNumAcquired());
+        undoLogLengths.add(currentIteration.getUndoLogSize());
+      }
+    }
+
     protected final void doCommit(T item) {
       try {
-        commitIteration(currentIteration, iterationId, item, (numCommitted & lockCoalescing) == 0);
+        recordAttempt();
+        commitIteration(currentIteration, iterationId, item, shouldReleaseLocks());
         // XXX(ddn): This count will be incorrect for ordered executors because
         // commitIteration only puts an iteration into ready to commit
         numCommitted++;
+        count(LoopMetrics.COMMITS, 1);
+        if (HISTOGRAMS) {
+          iterationTimes.add(System.nanoTime() - iterationStart);
+        }
         recordCpuId();
       } catch (IterationAbortException _) {
         // an iteration has thrown WorkNotUsefulException/WorkNotProgressiveException,
         // and tries to commit before it goes to RTC (i.e. completes), another thread
         // signals it to abort itself
         readd(item);
-        doAbort();
+        // the attempt was recorded before committing
+        abortAttempt();
       }
     }
 
+    private boolean shouldReleaseLocks() {
+      if (lockCoalescing == 0 || ++commitsWithoutRelease > lockCoalescing
+          || currentIteration.isRevocationRequested()) {
+        commitsWithoutRelease = 0;
+        return true;
+      }
+      return false;
+    }
+
     protected final void doAbort() {
+      recordAttempt();
+      abortAttempt();
+    }
+
+    private void abortAttempt() {
+      long abortStart = Trace.ENABLED ? System.nanoTime() : 0;
       abortIteration(currentIteration);
+      if (Trace.ENABLED) {
+        Trace.record(Trace.ABORT, abortStart);
+      }
+      commitsWithoutRelease = 0;
       numAborted++;
-      // TODO(ddn): Implement this better using control algo! Needed something fast
-      // to make boruvka work.
-      final int logFactor = 4;
-      final int mask = (1 << logFactor) - 1;
+      count(LoopMetrics.ABORTS, 1);
       if (lastAbort == numCommitted) {
         // Haven't committed anything since last abort
         consecAborts++;
-        if (consecAborts > 1 && (consecAborts & mask) == 0) {
-          startWaiting();
-          try {
-            Thread.sleep(consecAborts >> logFactor);
-          } catch (InterruptedException e) {
-            throw new Error(e);
-          } finally {
-            stopWaiting();
-          }
-        }
       } else {
         consecAborts = 0;
       }
       lastAbort = numCommitted;
+
+      if (consecAborts > 0) {
+        startWaiting();
+        try {
+          contentionManager.onAbort(currentIteration, consecAborts);
+        } finally {
+          if (Trace.ENABLED) {
+            Trace.record(Trace.BACKOFF, getWaitStart());
+          }
+          stopWaiting();
+        }
+      }
     }
 
     /**
@@ -166,6 +303,10 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
      * @param item
      */
     private void readd(T item) {
+      if (HISTOGRAMS) {
+        lastAborted = item;
+        lastAbortedAt = numStarted;
+      }
       while (true) {
         try {
           worklist.add(item, this);
@@ -197,8 +338,9 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
               }
             }
 
+            startIteration(item);
             try {
-              body.call(item, this);
+              callBody(item);
               doCommit(item);
             } catch (IterationAbortException _) {
               readd(item);
@@ -234,6 +376,19 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
       }
     }
 
+    private void callBody(T item) {
+      if (!Trace.ENABLED) {
+        body.call(item, this);
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        body.call(item, this);
+      } finally {
+        Trace.record(Trace.BODY, start);
+      }
+    }
+
     @Override
     public final void add(final T t) {
       add(t, MethodFlag.ALL);
@@ -241,19 +396,11 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
 
     @Override
     public void add(final T t, byte flags) {
-      final ForeachContext<T> ctx = this;
       if (GaloisRuntime.needMethodFlag(flags, MethodFlag.SAVE_UNDO)) {
-        currentIteration.addCommitAction(new Callback() {
-          @Override
-          public void call() {
-            worklist.add(t, ctx);
-            if (someDone()) {
-              wakeupOne();
-            }
-          }
-        });
+        currentIteration.addCommitAction(addAction, t, this, null, 0);
       } else {
-        worklist.add(t, ctx);
+        worklist.add(t, this);
+        count(LoopMetrics.ADDS, 1);
         if (someDone()) {
           wakeupOne();
         }
@@ -262,24 +409,12 @@ abstract class AbstractGaloisExecutor<T> extends AbstractConcurrentExecutor<T> {
 
     @Override
     public void finish() {
-      currentIteration.addCommitAction(new Callback() {
-        @Override
-        public void call() {
-          finish = true;
-          yield = true;
-        }
-      });
+      currentIteration.addCommitAction(finishAction, null, null, null, 0);
     }
 
     @Override
     public void suspendWith(final Callback call) {
-      currentIteration.addCommitAction(new Callback() {
-        @Override
-        public void call() {
-          addSuspendThunk(call);
-          yield = true;
-        }
-      });
+      currentIteration.addCommitAction(suspendWithAction, call, null, null, 0);
     }
 
     @Override
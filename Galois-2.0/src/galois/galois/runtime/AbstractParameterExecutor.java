@@ -76,6 +76,11 @@ abstract class AbstractParameterExecutor<T, S> implements Executor, ForeachConte
     return 0;
   }
 
+  @Override
+  public int getSocketId() {
+    return 0;
+  }
+
   @Override
   public int getIterationId() {
     return 0;
@@ -96,6 +101,11 @@ abstract class AbstractParameterExecutor<T, S> implements Executor, ForeachConte
     it.addUndoAction(action);
   }
 
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    it.addUndoAction(action, arg0, arg1, arg2, arg3);
+  }
+
   @Override
   public boolean isSerial() {
     return false;
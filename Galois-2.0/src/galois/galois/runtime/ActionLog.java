@@ -0,0 +1,138 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: ActionLog.java
+
+*/
+
+
+
+package galois.runtime;
+
+/**
+ * Growable log of {@link LogAction}s and their operands stored in parallel arrays.
+ * Once the arrays have grown to the size needed by an iteration, recording, replaying
+ * and clearing the log do not allocate.
+ */
+final class ActionLog {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Opcode for entries that are plain callbacks
+   */
+  private static final LogAction CALLBACK = new LogAction() {
+    @Override
+    public void call(Object arg0, Object arg1, Object arg2, int arg3) {
+      ((Callback) arg0).call();
+    }
+  };
+
+  private LogAction[] actions;
+  private Object[] args;
+  private int[] ints;
+  private int size;
+
+  public ActionLog() {
+    actions = new LogAction[INITIAL_CAPACITY];
+    args = new Object[INITIAL_CAPACITY * 3];
+    ints = new int[INITIAL_CAPACITY];
+  }
+
+  private void grow() {
+    int capacity = actions.length * 2;
+    LogAction[] newActions = new LogAction[capacity];
+    Object[] newArgs = new Object[capacity * 3];
+    int[] newInts = new int[capacity];
+    System.arraycopy(actions, 0, newActions, 0, size);
+    System.arraycopy(args, 0, newArgs, 0, size * 3);
+    System.arraycopy(ints, 0, newInts, 0, size);
+    actions = newActions;
+    args = newArgs;
+    ints = newInts;
+  }
+
+  public void add(Callback callback) {
+    add(CALLBACK, callback, null, null, 0);
+  }
+
+  public void add(LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    if (size == actions.length) {
+      grow();
+    }
+    int base = size * 3;
+    actions[size] = action;
+    args[base] = arg0;
+    args[base + 1] = arg1;
+    args[base + 2] = arg2;
+    ints[size] = arg3;
+    size++;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Performs all actions in the order they were added and clears the log. Actions
+   * added while replaying are also performed.
+   */
+  public void replayForward() {
+    for (int i = 0; i < size; i++) {
+      int base = i * 3;
+      actions[i].call(args[base], args[base + 1], args[base + 2], ints[i]);
+    }
+    clear();
+  }
+
+  /**
+   * Performs all actions in the reverse order they were added and clears the log.
+   */
+  public void replayReverse() {
+    while (size > 0) {
+      int i = --size;
+      int base = i * 3;
+      LogAction action = actions[i];
+      Object arg0 = args[base];
+      Object arg1 = args[base + 1];
+      Object arg2 = args[base + 2];
+      actions[i] = null;
+      args[base] = null;
+      args[base + 1] = null;
+      args[base + 2] = null;
+      action.call(arg0, arg1, arg2, ints[i]);
+    }
+  }
+
+  /**
+   * Removes all entries, dropping references to operands so they can be garbage
+   * collected.
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      int base = i * 3;
+      actions[i] = null;
+      args[base] = null;
+      args[base + 1] = null;
+      args[base + 2] = null;
+    }
+    size = 0;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: AllocationAccounting.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Attributes allocated bytes and garbage collection pauses to loops.
+ * 
+ * <p>
+ * Allocation is read from the per-thread allocation counters of HotSpot
+ * (<code>com.sun.management.ThreadMXBean</code>, accessed reflectively) at the start and
+ * end of a loop for the calling thread and every thread of the thread pool. Pauses come from the
+ * notifications that collectors send after every collection. Both are inclusive: a
+ * loop is charged for the loops nested in it, and for anything that other threads
+ * outside of the runtime do at the same time. On JVMs without these facilities, the
+ * corresponding numbers are reported as missing.
+ * </p>
+ */
+final class AllocationAccounting {
+  private static Logger logger = Logger.getLogger("galois.runtime.AllocationAccounting");
+
+  private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+  private static final String HOTSPOT_THREAD_BEAN = "com.sun.management.ThreadMXBean";
+
+  private final ThreadMXBean threadBean;
+  /**
+   * <code>getThreadAllocatedBytes(long)</code> of the HotSpot bean or null if not supported
+   */
+  private final Method threadAllocatedBytes;
+  private final List<Account> active;
+  private final boolean gcNotifications;
+
+  AllocationAccounting() {
+    threadBean = ManagementFactory.getThreadMXBean();
+    Method m = null;
+    try {
+      Class<?> c = Class.forName(HOTSPOT_THREAD_BEAN);
+      if (c.isInstance(threadBean)
+          && (Boolean) c.getMethod("isThreadAllocatedMemorySupported").invoke(threadBean)) {
+        c.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threadBean, true);
+        m = c.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (Exception e) {
+      // not a HotSpot JVM
+      m = null;
+    }
+    threadAllocatedBytes = m;
+    active = new CopyOnWriteArrayList<Account>();
+
+    boolean registered = false;
+    NotificationListener listener = new NotificationListener() {
+      @Override
+      public void handleNotification(Notification notification, Object handback) {
+        if (GC_NOTIFICATION.equals(notification.getType())) {
+          onGc((CompositeData) notification.getUserData());
+        }
+      }
+    };
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc instanceof NotificationEmitter) {
+        ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        registered = true;
+      }
+    }
+    gcNotifications = registered;
+    if (threadAllocatedBytes == null || !gcNotifications) {
+      logger.info("Allocation or GC accounting not supported by this JVM");
+    }
+  }
+
+  private void onGc(CompositeData info) {
+    long duration;
+    try {
+      // duration of the collection in milliseconds
+      duration = ((Number) ((CompositeData) info.get("gcInfo")).get("duration")).longValue();
+    } catch (RuntimeException e) {
+      return;
+    }
+    for (Account a : active) {
+      a.addPause(duration);
+    }
+  }
+
+  private long allocatedBytes(Thread t) {
+    if (threadAllocatedBytes == null) {
+      return -1;
+    }
+    try {
+      return (Long) threadAllocatedBytes.invoke(threadBean, t.getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Starts charging a loop.
+   * 
+   * @param executor  the executor of the loop
+   * @param threads   the threads that may run the loop
+   * @return          the account of the loop, to be passed to {@link #end(Account)}
+   */
+  Account begin(Executor executor, Thread[] threads) {
+    Account a = new Account(executor.getClass().getSimpleName(), threads);
+    for (int i = 0; i < threads.length; i++) {
+      a.startBytes[i] = allocatedBytes(threads[i]);
+    }
+    active.add(a);
+    a.startTime = System.nanoTime();
+    return a;
+  }
+
+  /**
+   * Stops charging a loop.
+   * 
+   * @param a  the account of the loop
+   * @return   the allocation and pauses of the loop
+   */
+  AllocationStatistics end(Account a) {
+    long time = System.nanoTime() - a.startTime;
+    active.remove(a);
+    long[] bytes = new long[a.threads.length];
+    for (int i = 0; i < bytes.length; i++) {
+      long end = allocatedBytes(a.threads[i]);
+      bytes[i] = end < 0 || a.startBytes[i] < 0 ? -1 : end - a.startBytes[i];
+    }
+    synchronized (a) {
+      return new AllocationStatistics(a.name, time, bytes, gcNotifications ? a.numPauses : -1, a.pauseTime,
+          a.maxPause);
+    }
+  }
+
+  static class Account {
+    private final String name;
+    private final Thread[] threads;
+    private final long[] startBytes;
+    private long startTime;
+    private int numPauses;
+    private long pauseTime;
+    private long maxPause;
+
+    private Account(String name, Thread[] threads) {
+      this.name = name;
+      this.threads = threads;
+      startBytes = new long[threads.length];
+    }
+
+    private synchronized void addPause(long duration) {
+      numPauses++;
+      pauseTime += duration;
+      maxPause = Math.max(maxPause, duration);
+    }
+  }
+}
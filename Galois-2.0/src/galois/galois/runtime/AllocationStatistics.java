@@ -0,0 +1,134 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: AllocationStatistics.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.Statistics;
+
+/**
+ * Bytes allocated and garbage collection pauses per loop and per thread.
+ * See {@link AllocationAccounting}.
+ */
+class AllocationStatistics extends Statistics {
+  private final List<String> names;
+  private final List<Long> times;
+  private final List<long[]> bytes;
+  private final List<Integer> numPauses;
+  private final List<Long> pauseTimes;
+  private final List<Long> maxPauses;
+
+  public AllocationStatistics(String name, long time, long[] bytes, int numPauses, long pauseTime, long maxPause) {
+    names = new ArrayList<String>();
+    times = new ArrayList<Long>();
+    this.bytes = new ArrayList<long[]>();
+    this.numPauses = new ArrayList<Integer>();
+    pauseTimes = new ArrayList<Long>();
+    maxPauses = new ArrayList<Long>();
+
+    names.add(name);
+    times.add(time);
+    this.bytes.add(bytes);
+    this.numPauses.add(numPauses);
+    pauseTimes.add(pauseTime);
+    maxPauses.add(maxPause);
+  }
+
+  private static long sum(long[] values) {
+    long retval = 0;
+    for (long v : values) {
+      if (v < 0) {
+        return -1;
+      }
+      retval += v;
+    }
+    return retval;
+  }
+
+  @Override
+  public void dumpFull(PrintStream out) {
+    printFullHeader(out, "Allocation");
+    out.println("Per loop [executor, time (ms), allocated bytes, GC pauses, pause time (ms), max pause (ms)]"
+        + " and allocated bytes per thread (-1: not supported):");
+    for (int i = 0; i < names.size(); i++) {
+      out.printf("%s %d %d %d %d %d %s\n", names.get(i), times.get(i) / 1000000, sum(bytes.get(i)), numPauses
+          .get(i), pauseTimes.get(i), maxPauses.get(i), Arrays.toString(bytes.get(i)));
+    }
+  }
+
+  @Override
+  public void dumpSummary(PrintStream out) {
+    long totalBytes = 0;
+    long maxBytes = 0;
+    long pauses = 0;
+    boolean pausesSupported = true;
+    long pauseTime = 0;
+    long maxPause = 0;
+    for (int i = 0; i < names.size(); i++) {
+      long b = sum(bytes.get(i));
+      if (b < 0 || totalBytes < 0) {
+        totalBytes = -1;
+      } else {
+        totalBytes += b;
+        maxBytes = Math.max(maxBytes, b);
+      }
+      if (numPauses.get(i) < 0) {
+        pausesSupported = false;
+      }
+      pauses += numPauses.get(i);
+      pauseTime += pauseTimes.get(i);
+      maxPause = Math.max(maxPause, maxPauses.get(i));
+    }
+
+    printSummaryHeader(out, "Allocation");
+    if (totalBytes < 0) {
+      out.print("Bytes: not supported");
+    } else {
+      out.printf("Loops: %d Total MB: %.2f Max MB per loop: %.2f", names.size(), totalBytes / 1048576.0,
+          maxBytes / 1048576.0);
+    }
+    if (!pausesSupported) {
+      out.println(" GC pauses: not supported");
+    } else {
+      out.printf(" GC pauses: %d Pause time (ms): %d Max pause (ms): %d\n", pauses, pauseTime, maxPause);
+    }
+  }
+
+  @Override
+  public void merge(Object obj) {
+    AllocationStatistics other = (AllocationStatistics) obj;
+    names.addAll(other.names);
+    times.addAll(other.times);
+    bytes.addAll(other.bytes);
+    numPauses.addAll(other.numPauses);
+    pauseTimes.addAll(other.pauseTimes);
+    maxPauses.addAll(other.maxPauses);
+  }
+}
@@ -0,0 +1,48 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: BackoffContentionManager.java
+
+*/
+
+
+
+package galois.runtime;
+
+/**
+ * Always aborts the iteration that requests a lock held by another iteration and
+ * then backs off for a random time that grows exponentially with the number of
+ * consecutive aborts.
+ *
+ */
+public class BackoffContentionManager extends ContentionManager {
+  public BackoffContentionManager() {
+  }
+
+  /**
+   * @param minBackoffNanos  backoff after the first consecutive abort
+   * @param maxBackoffNanos  upper bound on the backoff
+   */
+  public BackoffContentionManager(long minBackoffNanos, long maxBackoffNanos) {
+    super(minBackoffNanos, maxBackoffNanos);
+  }
+
+  @Override
+  public void resolve(Iteration current, Iteration conflicter) {
+    IterationAbortException.throwException();
+  }
+}
@@ -46,6 +46,10 @@ class BarebonesExecutor<T> extends AbstractConcurrentExecutor<T> {
   public void onUndo(Iteration it, Callback action) {
   }
 
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
   @Override
   protected Process newProcess(int tid) {
     return new MyProcess(tid);
@@ -64,6 +68,8 @@ class BarebonesExecutor<T> extends AbstractConcurrentExecutor<T> {
 
           while ((item = worklist.poll(this)) != null) {
             numCommitted++;
+            count(LoopMetrics.POLLS, 1);
+            count(LoopMetrics.COMMITS, 1);
             body.call(item, this);
             Features.getReplayFeature().onCommit(null, getIterationId(), item);
             if (yield) {
@@ -90,6 +96,7 @@ class BarebonesExecutor<T> extends AbstractConcurrentExecutor<T> {
     @Override
     public void add(T t, byte flags) {
       worklist.add(t, this);
+      count(LoopMetrics.ADDS, 1);
       if (someDone()) {
         wakeupOne();
       }
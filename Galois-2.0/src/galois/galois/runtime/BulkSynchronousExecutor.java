@@ -0,0 +1,310 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: BulkSynchronousExecutor.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import fn.Lambda2Void;
+import galois.objects.MethodFlag;
+import galois.runtime.wl.Worklist;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.SystemProperties;
+
+/**
+ * Executor for loops that proceed in bulk-synchronous rounds. The elements of a round
+ * are kept in an array (the frontier) that processes claim in chunks; elements added in
+ * a round go to per-process buffers that become the frontier of the next round. Rounds
+ * are separated by the end of a pass over the processes, after which the round's
+ * reduction, suspend thunks and {@link RoundCallback} run serially.
+ * 
+ * <p>
+ * There is no speculation: iterations acquire no abstract locks, keep no undo logs and
+ * never abort, and commit actions run immediately. Loop bodies may not start nested
+ * loops, but suspend thunks and the round callback may.
+ * </p>
+ *
+ * @param <T>  type of elements being iterated over
+ */
+class BulkSynchronousExecutor<T> extends AbstractConcurrentExecutor<T> {
+  /**
+   * Number of elements a process claims at a time
+   */
+  private static final int CHUNK_SIZE = SystemProperties.getIntProperty("roundChunkSize", 64);
+
+  private final RoundCallback callback;
+  private final boolean serial;
+  private final AtomicInteger next;
+  private final AtomicInteger numFinished;
+  private Lambda2Void<T, RoundContext<T>> roundBody;
+  private RoundProcess[] roundProcesses;
+  private Object[] frontier;
+  private int frontierSize;
+  private int round;
+  private volatile boolean stop;
+
+  /**
+   * @param callback  function to call at the end of every round or null
+   */
+  BulkSynchronousExecutor(RoundCallback callback) {
+    this.callback = callback;
+    // serial data structures may not be accessed concurrently
+    serial = GaloisRuntime.getRuntime().useSerial();
+    next = new AtomicInteger();
+    numFinished = new AtomicInteger();
+  }
+
+  @SuppressWarnings("unchecked")
+  private RoundProcess[] newRoundProcesses(int size) {
+    return (RoundProcess[]) new BulkSynchronousExecutor<?>.RoundProcess[size];
+  }
+
+  /**
+   * Executes the given function over the initial elements and the elements added in each
+   * round until a round adds no elements.
+   */
+  public IterationStatistics call(Iterable<T> initial, Lambda2Void<T, RoundContext<T>> body)
+      throws ExecutionException {
+    roundBody = body;
+    roundProcesses = newRoundProcesses(numThreads);
+    frontier = new Object[16];
+    frontierSize = 0;
+    for (T item : initial) {
+      if (frontierSize == frontier.length) {
+        frontier = Arrays.copyOf(frontier, frontierSize * 2);
+      }
+      frontier[frontierSize++] = item;
+    }
+    round = 0;
+    stop = false;
+    if (frontierSize == 0) {
+      return new IterationStatistics();
+    }
+    return call(null, new EmptyWorklist());
+  }
+
+  @Override
+  public void arbitrate(Iteration current, Iteration conflicter) throws IterationAbortException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void onRelease(Iteration it, ReleaseCallback action) {
+  }
+
+  @Override
+  public void onCommit(Iteration it, Callback action) {
+    action.call();
+  }
+
+  @Override
+  public void onUndo(Iteration it, Callback action) {
+  }
+
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
+  @Override
+  public void suspend(Callback listener) {
+    throw new Error("Loops may not be nested in rounds");
+  }
+
+  @Override
+  protected Process newProcess(int tid) {
+    RoundProcess p = new RoundProcess(tid);
+    roundProcesses[tid] = p;
+    return p;
+  }
+
+  /**
+   * Called by the last process to finish a round. Builds the next frontier and
+   * schedules the round callback to run serially after the round.
+   */
+  private void finishRound() {
+    int size = 0;
+    long reduction = 0;
+    for (RoundProcess p : roundProcesses) {
+      size += p.numAdded;
+      reduction += p.reduction;
+    }
+
+    if (frontier.length < size) {
+      frontier = new Object[size];
+    } else if (size < frontierSize) {
+      // drop references to elements of the round that ended
+      Arrays.fill(frontier, size, frontierSize, null);
+    }
+    int offset = 0;
+    for (RoundProcess p : roundProcesses) {
+      System.arraycopy(p.added, 0, frontier, offset, p.numAdded);
+      Arrays.fill(p.added, 0, p.numAdded, null);
+      offset += p.numAdded;
+      p.numAdded = 0;
+      p.reduction = 0;
+    }
+    frontierSize = size;
+
+    if (callback != null) {
+      final int lastRound = round;
+      final int numNext = size;
+      final long sum = reduction;
+      addSuspendThunk(new Callback() {
+        @Override
+        public void call() {
+          if (!callback.call(lastRound, numNext, sum)) {
+            finish = true;
+          }
+        }
+      });
+    }
+
+    if (stop) {
+      finish = true;
+    }
+    round++;
+    next.set(0);
+    numFinished.set(0);
+    yield = size != 0 && !finish;
+  }
+
+  private class RoundProcess extends Process implements RoundContext<T> {
+    private Object[] added;
+    private int numAdded;
+    private long reduction;
+
+    public RoundProcess(int id) {
+      super(id);
+      added = new Object[16];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void doCall() throws Exception {
+      try {
+        if (serial && getThreadId() != 0) {
+          return;
+        }
+        int size = frontierSize;
+        int start;
+        while ((start = next.getAndAdd(CHUNK_SIZE)) < size) {
+          int end = Math.min(size, start + CHUNK_SIZE);
+          for (int i = start; i < end; i++) {
+            roundBody.call((T) frontier[i], this);
+          }
+          int n = end - start;
+          numCommitted += n;
+          count(LoopMetrics.POLLS, n);
+          count(LoopMetrics.COMMITS, n);
+        }
+      } finally {
+        if (numFinished.incrementAndGet() == numThreads) {
+          finishRound();
+        }
+      }
+    }
+
+    @Override
+    public final void add(T t) {
+      add(t, MethodFlag.ALL);
+    }
+
+    @Override
+    public void add(T t, byte flags) {
+      if (numAdded == added.length) {
+        added = Arrays.copyOf(added, numAdded * 2);
+      }
+      added[numAdded++] = t;
+      count(LoopMetrics.ADDS, 1);
+    }
+
+    @Override
+    public void finish() {
+      stop = true;
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+      addSuspendThunk(call);
+    }
+
+    @Override
+    public int getIterationId() {
+      return getThreadId();
+    }
+
+    @Override
+    public int getRound() {
+      return round;
+    }
+
+    @Override
+    public void reduce(long delta) {
+      reduction += delta;
+    }
+  }
+
+  /**
+   * Stands in for the worklist; elements are kept in the frontier instead
+   */
+  private class EmptyWorklist implements Worklist<T> {
+    @Override
+    public Worklist<T> newInstance() {
+      return new EmptyWorklist();
+    }
+
+    @Override
+    public void add(T item, ForeachContext<T> ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addInitial(T item, ForeachContext<T> ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T poll(ForeachContext<T> ctx) {
+      return null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return 0;
+    }
+
+    @Override
+    public void finishAddInitial() {
+    }
+  }
+}
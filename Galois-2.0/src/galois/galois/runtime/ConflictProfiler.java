@@ -0,0 +1,162 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: ConflictProfiler.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import galois.objects.Lockable;
+import galois.objects.MethodFlag;
+import galois.objects.graph.GNode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.SystemProperties;
+
+/**
+ * Attributes conflicts to the objects and call sites that cause them.
+ * 
+ * <p>
+ * Enabled by the property <code>conflictProfile</code>. While a loop runs, every
+ * iteration that fails to acquire an abstract lock records the contended object: its
+ * class and identity hash, or those of its data for graph nodes, since node data is
+ * what an application can recognize. One in <code>conflictStackSampleRate</code>
+ * conflicts (default 16) also records the call site that tried to acquire the lock,
+ * which is the first stack frame outside of the runtime and object libraries.
+ * The results of each loop are reported as {@link ConflictStatistics}.
+ * </p>
+ *
+ */
+final class ConflictProfiler {
+  private static final boolean ENABLED = SystemProperties.getBooleanProperty("conflictProfile", false);
+  private static final int STACK_SAMPLE_RATE = Math.max(1, SystemProperties.getIntProperty(
+      "conflictStackSampleRate", 16));
+
+  private static volatile ConflictProfiler active;
+
+  private final ConcurrentHashMap<String, AtomicInteger> objects;
+  private final ConcurrentHashMap<String, AtomicInteger> classes;
+  private final ConcurrentHashMap<String, AtomicInteger> sites;
+  private final AtomicInteger numConflicts;
+
+  private ConflictProfiler() {
+    objects = new ConcurrentHashMap<String, AtomicInteger>();
+    classes = new ConcurrentHashMap<String, AtomicInteger>();
+    sites = new ConcurrentHashMap<String, AtomicInteger>();
+    numConflicts = new AtomicInteger();
+  }
+
+  /**
+   * Starts profiling the conflicts of a loop if profiling is enabled. Profilers nest
+   * like loops.
+   * 
+   * @return  the profiler that was active before, to be passed to {@link #stop(ConflictProfiler)}
+   */
+  static ConflictProfiler start() {
+    ConflictProfiler prev = active;
+    if (ENABLED) {
+      active = new ConflictProfiler();
+    }
+    return prev;
+  }
+
+  /**
+   * Stops profiling the current loop.
+   * 
+   * @param prev  the result of the matching call to {@link #start()}
+   * @return      the conflicts of the loop or null if profiling is disabled or there were none
+   */
+  static ConflictStatistics stop(ConflictProfiler prev) {
+    ConflictProfiler p = active;
+    active = prev;
+    if (!ENABLED || p == null || p.numConflicts.get() == 0) {
+      return null;
+    }
+    return new ConflictStatistics(p.numConflicts.get(), snapshot(p.objects), snapshot(p.classes),
+        snapshot(p.sites));
+  }
+
+  /**
+   * Records a failed attempt to acquire the given object, if profiling.
+   * 
+   * @param lockable  the contended object
+   */
+  static void record(Lockable lockable) {
+    ConflictProfiler p = active;
+    if (p != null) {
+      p.doRecord(lockable);
+    }
+  }
+
+  private void doRecord(Lockable lockable) {
+    Object target = lockable;
+    if (lockable instanceof GNode) {
+      // don't acquire anything, we are in the middle of a conflict
+      Object data = ((GNode<?>) lockable).getData(MethodFlag.NONE);
+      if (data != null) {
+        target = data;
+      }
+    }
+    String className = target.getClass().getName();
+    increment(classes, className);
+    increment(objects, className + "@" + Integer.toHexString(System.identityHashCode(target)));
+
+    if (numConflicts.getAndIncrement() % STACK_SAMPLE_RATE == 0) {
+      increment(sites, callSite(new Throwable().getStackTrace()));
+    }
+  }
+
+  private static String callSite(StackTraceElement[] stack) {
+    for (StackTraceElement e : stack) {
+      String name = e.getClassName();
+      if (!name.startsWith("galois.runtime.") && !name.startsWith("galois.objects.")) {
+        return e.toString();
+      }
+    }
+    return stack.length > 0 ? stack[stack.length - 1].toString() : "unknown";
+  }
+
+  private static void increment(ConcurrentHashMap<String, AtomicInteger> map, String key) {
+    AtomicInteger count = map.get(key);
+    if (count == null) {
+      AtomicInteger c = new AtomicInteger();
+      count = map.putIfAbsent(key, c);
+      if (count == null) {
+        count = c;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  private static Map<String, Integer> snapshot(Map<String, AtomicInteger> map) {
+    Map<String, Integer> retval = new HashMap<String, Integer>();
+    for (Map.Entry<String, AtomicInteger> entry : map.entrySet()) {
+      retval.put(entry.getKey(), entry.getValue().get());
+    }
+    return retval;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: ConflictStatistics.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import util.Statistics;
+
+/**
+ * Conflicts of one or more loops by contended object, class of object and call site.
+ * See {@link ConflictProfiler}.
+ */
+class ConflictStatistics extends Statistics {
+  private static final int TOP = 20;
+
+  private int numConflicts;
+  private int numLoops;
+  private final Map<String, Integer> objects;
+  private final Map<String, Integer> classes;
+  private final Map<String, Integer> sites;
+
+  public ConflictStatistics(int numConflicts, Map<String, Integer> objects, Map<String, Integer> classes,
+      Map<String, Integer> sites) {
+    this.numConflicts = numConflicts;
+    this.objects = objects;
+    this.classes = classes;
+    this.sites = sites;
+    numLoops = 1;
+  }
+
+  private static List<Map.Entry<String, Integer>> top(Map<String, Integer> map, int n) {
+    List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(map.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+      @Override
+      public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+        return o2.getValue().compareTo(o1.getValue());
+      }
+    });
+    return entries.subList(0, Math.min(n, entries.size()));
+  }
+
+  private static int sum(Map<String, Integer> map) {
+    int retval = 0;
+    for (Integer v : map.values()) {
+      retval += v;
+    }
+    return retval;
+  }
+
+  private static void printTop(PrintStream out, String header, Map<String, Integer> map) {
+    int total = sum(map);
+    out.printf("Top %s (of %d distinct, %d samples):\n", header, map.size(), total);
+    for (Map.Entry<String, Integer> entry : top(map, TOP)) {
+      out.printf("\t%d (%.2f%%) %s\n", entry.getValue(), 100.0 * entry.getValue() / total, entry.getKey());
+    }
+  }
+
+  @Override
+  public void dumpFull(PrintStream out) {
+    printFullHeader(out, "Conflicts");
+    out.printf("Conflicts: %d in %d loops with conflicts\n", numConflicts, numLoops);
+    printTop(out, "objects", objects);
+    printTop(out, "classes", classes);
+    printTop(out, "sites", sites);
+  }
+
+  @Override
+  public void dumpSummary(PrintStream out) {
+    printSummaryHeader(out, "Conflicts");
+    out.printf("Total: %d Distinct objects: %d", numConflicts, objects.size());
+    List<Map.Entry<String, Integer>> topObjects = top(objects, 1);
+    if (!topObjects.isEmpty()) {
+      Map.Entry<String, Integer> e = topObjects.get(0);
+      out.printf(" Top object: %s (%.2f%%)", e.getKey(), 100.0 * e.getValue() / numConflicts);
+    }
+    List<Map.Entry<String, Integer>> topSites = top(sites, 1);
+    if (!topSites.isEmpty()) {
+      Map.Entry<String, Integer> e = topSites.get(0);
+      out.printf(" Top site: %s (%.2f%%)", e.getKey(), 100.0 * e.getValue() / sum(sites));
+    }
+    out.println();
+  }
+
+  private static void mergeMap(Map<String, Integer> dst, Map<String, Integer> src) {
+    for (Map.Entry<String, Integer> entry : src.entrySet()) {
+      String k = entry.getKey();
+      Integer v = dst.get(k);
+      if (v == null) {
+        dst.put(k, entry.getValue());
+      } else {
+        dst.put(k, v + entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void merge(Object obj) {
+    ConflictStatistics other = (ConflictStatistics) obj;
+    numConflicts += other.numConflicts;
+    numLoops += other.numLoops;
+    mergeMap(objects, other.objects);
+    mergeMap(classes, other.classes);
+    mergeMap(sites, other.sites);
+  }
+}
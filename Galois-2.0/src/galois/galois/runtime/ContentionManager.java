@@ -0,0 +1,189 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: ContentionManager.java
+
+*/
+
+
+
+package galois.runtime;
+
+import java.util.concurrent.locks.LockSupport;
+
+import util.SystemProperties;
+
+/**
+ * Policy that decides what happens when an iteration fails to acquire an abstract lock
+ * held by another iteration, and how long an iteration backs off after it aborts.
+ * 
+ * <p>
+ * A contention manager is created for each Galois iterator and is shared by all of
+ * its threads, so implementations must be thread safe. Implementations are selected
+ * per iterator with {@link galois.runtime.wl.Priority.Rule#withContentionManager(Class, Object...)}
+ * or for all iterators with the <code>contentionManager</code> system property, which
+ * takes one of the values of {@link Type}. The default is randomized exponential
+ * backoff ({@link BackoffContentionManager}).
+ * </p>
+ * 
+ * <p>
+ * Contention managers are only consulted by unordered iterators; ordered iterators
+ * arbitrate conflicts by the order of their elements.
+ * </p>
+ *
+ */
+public abstract class ContentionManager {
+  private static final Type defaultType = SystemProperties.getEnumProperty("contentionManager", Type.class,
+      Type.BACKOFF);
+  /**
+   * Waits shorter than this are done by spinning rather than parking
+   */
+  private static final long SPIN_THRESHOLD_NANOS = 20 * 1000;
+
+  protected final long minBackoffNanos;
+  protected final long maxBackoffNanos;
+
+  protected ContentionManager() {
+    this(SystemProperties.getLongProperty("backoffMinNanos", 500), SystemProperties.getLongProperty(
+        "backoffMaxNanos", 1000 * 1000));
+  }
+
+  /**
+   * @param minBackoffNanos  backoff after the first consecutive abort
+   * @param maxBackoffNanos  upper bound on the backoff after any number of consecutive aborts
+   */
+  protected ContentionManager(long minBackoffNanos, long maxBackoffNanos) {
+    this.minBackoffNanos = Math.max(1, minBackoffNanos);
+    this.maxBackoffNanos = Math.max(this.minBackoffNanos, maxBackoffNanos);
+  }
+
+  /**
+   * Called when <code>current</code> failed to acquire an abstract lock owned by
+   * <code>conflicter</code>. Implementations either return, in which case
+   * <code>current</code> tries to acquire the lock again, or abort <code>current</code>
+   * by calling {@link IterationAbortException#throwException()}.
+   * 
+   * @param current     the iteration of the calling thread
+   * @param conflicter  the owner of the lock or null if the lock was released in the meantime
+   */
+  public abstract void resolve(Iteration current, Iteration conflicter);
+
+  /**
+   * Called after an iteration aborted and before its thread picks up the next element.
+   * The default implementation backs off for a random time that grows exponentially
+   * with the number of consecutive aborts.
+   * 
+   * @param it            the aborted iteration
+   * @param consecAborts  the number of aborts by the thread since its last commit
+   */
+  public void onAbort(Iteration it, int consecAborts) {
+    if (consecAborts > 0) {
+      backoff(randomBackoff(it, consecAborts));
+    }
+  }
+
+  /**
+   * Returns a backoff chosen uniformly at random between zero and
+   * <code>minBackoffNanos * 2^(rounds - 1)</code>, bounded by <code>maxBackoffNanos</code>.
+   * 
+   * @param it      the iteration backing off; used to decorrelate threads
+   * @param rounds  the number of rounds backed off so far
+   * @return        the backoff in nanoseconds
+   */
+  protected final long randomBackoff(Iteration it, int rounds) {
+    int shift = Math.min(Math.max(rounds - 1, 0), 62 - (63 - Long.numberOfLeadingZeros(minBackoffNanos)));
+    long limit = Math.min(maxBackoffNanos, minBackoffNanos << shift);
+
+    long x = System.nanoTime() ^ ((it != null ? it.getId() + 1 : 0) * 0x9E3779B97F4A7C15L);
+    x ^= x << 21;
+    x ^= x >>> 35;
+    x ^= x << 4;
+    return (x & Long.MAX_VALUE) % (limit + 1);
+  }
+
+  /**
+   * Waits for the given time, spinning for short waits and parking for longer ones.
+   * 
+   * @param nanos  time to wait in nanoseconds
+   */
+  protected static void backoff(long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+    if (nanos >= SPIN_THRESHOLD_NANOS) {
+      LockSupport.parkNanos(nanos);
+      return;
+    }
+    long deadline = System.nanoTime() + nanos;
+    while (System.nanoTime() - deadline < 0)
+      ;
+  }
+
+  /**
+   * Returns whether <code>a</code> has precedence over <code>b</code> in a total order
+   * of iterations. Used to break ties so that two iterations never wait for each other.
+   * 
+   * @param a  an iteration
+   * @param b  another iteration
+   * @return   true if <code>a</code> comes before <code>b</code>
+   */
+  protected static boolean precedes(Iteration a, Iteration b) {
+    return a.getId() < b.getId() || (a.getId() == b.getId() && System.identityHashCode(a) < System.identityHashCode(b));
+  }
+
+  /**
+   * Creates the contention manager selected by the <code>contentionManager</code>
+   * system property.
+   * 
+   * @return  a new contention manager
+   */
+  static ContentionManager newDefault() {
+    return defaultType.create();
+  }
+
+  /**
+   * The built-in contention managers.
+   *
+   */
+  public static enum Type {
+    /**
+     * Abort the requester and back off exponentially
+     */
+    BACKOFF,
+    /**
+     * Polka-style priority by accumulated karma
+     */
+    KARMA,
+    /**
+     * Wait for the conflicting iteration to release its locks
+     */
+    WAIT;
+
+    public ContentionManager create() {
+      switch (this) {
+      case BACKOFF:
+        return new BackoffContentionManager();
+      case KARMA:
+        return new KarmaContentionManager();
+      case WAIT:
+        return new WaitContentionManager();
+      default:
+        throw new Error("Unknown option: " + this);
+      }
+    }
+  }
+}
@@ -0,0 +1,399 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: DeterministicExecutor.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import galois.objects.Lockable;
+import galois.objects.MethodFlag;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import util.SystemProperties;
+
+/**
+ * An unordered executor whose results do not depend on the schedule or the number of
+ * threads. Items are executed in rounds over a window of pending items:
+ * 
+ * <ol>
+ * <li>Inspect: every item of the window is executed in isolation and rolled back,
+ * which records the abstract locks it acquires (its neighborhood) against the state
+ * at the start of the round.</li>
+ * <li>Execute: an item whose position in the window is the smallest among the items
+ * that share any of its locks is a winner. Winners have disjoint neighborhoods and are
+ * executed and committed in parallel; the others are retried in the next round.</li>
+ * </ol>
+ * 
+ * Pending items are kept in a deterministic order: the initial items in the order of
+ * the serial worklist, losers of a round before the remaining items, and added items
+ * at the end in the order of the iterations that added them. The window grows while
+ * most items win and shrinks when few do. Loop bodies may not start nested loops; trying
+ * to raises an error.
+ * 
+ *
+ * @param <T>  type of elements being iterated over
+ */
+class DeterministicExecutor<T> extends AbstractConcurrentExecutor<T> {
+  /**
+   * Initial number of items per round, the same for any number of threads
+   */
+  private static final int INITIAL_WINDOW = SystemProperties.getIntProperty("deterministicWindow", 1024);
+  private static final int MIN_WINDOW = 16;
+  private static final int MAX_WINDOW = 1024 * 1024;
+  /**
+   * Number of items a process claims at a time
+   */
+  private static final int CHUNK_SIZE = 8;
+
+  private static final int DRAIN = 0;
+  private static final int INSPECT = 1;
+  private static final int EXECUTE = 2;
+  private static final int DONE = 3;
+
+  private final ContentionManager contentionManager;
+  /**
+   * smallest position of an item in the window that acquired the lock, keyed by the
+   * owner reference of the lock
+   */
+  private final ConcurrentHashMap<AtomicReference<Iteration>, Integer> marks;
+  private final ArrayDeque<T> pending;
+  private final List<Entry<T>> window;
+  private final AtomicInteger next;
+  private final AtomicInteger numFinished;
+  private int windowSize;
+  private int phase;
+
+  DeterministicExecutor() {
+    contentionManager = ContentionManager.newDefault();
+    marks = new ConcurrentHashMap<AtomicReference<Iteration>, Integer>();
+    pending = new ArrayDeque<T>();
+    window = new ArrayList<Entry<T>>();
+    next = new AtomicInteger();
+    numFinished = new AtomicInteger();
+    windowSize = Math.max(MIN_WINDOW, INITIAL_WINDOW);
+    phase = DRAIN;
+  }
+
+  @Override
+  public void arbitrate(Iteration current, Iteration conflicter) {
+    contentionManager.resolve(current, conflicter);
+  }
+
+  @Override
+  public void onRelease(Iteration it, ReleaseCallback action) {
+    it.addReleaseAction(action);
+  }
+
+  @Override
+  public void onCommit(Iteration it, Callback action) {
+    it.addCommitAction(action);
+  }
+
+  @Override
+  public void onUndo(Iteration it, Callback action) {
+    it.addUndoAction(action);
+  }
+
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    it.addUndoAction(action, arg0, arg1, arg2, arg3);
+  }
+
+  @Override
+  public void suspend(Callback listener) {
+    // a nested loop would wait for processes that wait for the next phase
+    throw new Error("Loops may not be nested in deterministic loops");
+  }
+
+  @Override
+  protected Process newProcess(int tid) {
+    return new DeterministicProcess(tid);
+  }
+
+  private void mark(AtomicReference<Iteration> lock, int position) {
+    Integer old = marks.putIfAbsent(lock, position);
+    while (old != null && position < old) {
+      if (marks.replace(lock, old, position)) {
+        break;
+      }
+      old = marks.get(lock);
+    }
+  }
+
+  private boolean isWinner(Entry<T> entry) {
+    for (Lockable lockable : entry.neighborhood) {
+      if (marks.get(lockable.getOwner()) != entry.position) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Called by the last process to finish a phase. Sets up the next phase and asks for
+   * another pass over the processes unless the loop is done.
+   */
+  private void finishPhase() {
+    switch (phase) {
+    case INSPECT:
+      phase = EXECUTE;
+      break;
+    case EXECUTE:
+      int numWinners = 0;
+      List<T> added = new ArrayList<T>();
+      for (int i = window.size() - 1; i >= 0; i--) {
+        Entry<T> entry = window.get(i);
+        if (!entry.won) {
+          pending.addFirst(entry.item);
+        }
+      }
+      for (Entry<T> entry : window) {
+        if (!entry.won) {
+          continue;
+        }
+        numWinners++;
+        added.addAll(entry.added);
+        if (entry.suspends != null) {
+          for (Callback call : entry.suspends) {
+            addSuspendThunk(call);
+          }
+        }
+        if (entry.finish) {
+          finish = true;
+        }
+      }
+      pending.addAll(added);
+
+      int size = window.size();
+      if (numWinners * 2 < size) {
+        windowSize = Math.max(MIN_WINDOW, size / 2);
+      } else if (size == windowSize && numWinners * 10 >= size * 9) {
+        windowSize = Math.min(MAX_WINDOW, windowSize * 2);
+      }
+      fillWindow();
+      break;
+    case DRAIN:
+      fillWindow();
+      break;
+    default:
+      break;
+    }
+
+    next.set(0);
+    numFinished.set(0);
+    yield = phase != DONE;
+  }
+
+  private void fillWindow() {
+    window.clear();
+    marks.clear();
+    for (int i = 0; i < windowSize && !pending.isEmpty(); i++) {
+      window.add(new Entry<T>(pending.poll(), i));
+    }
+    phase = window.isEmpty() || finish ? DONE : INSPECT;
+  }
+
+  /**
+   * An item in the current window
+   */
+  private static class Entry<T> {
+    final T item;
+    final int position;
+    Lockable[] neighborhood;
+    boolean won;
+    final List<T> added;
+    List<Callback> suspends;
+    boolean finish;
+
+    Entry(T item, int position) {
+      this.item = item;
+      this.position = position;
+      added = new ArrayList<T>();
+    }
+
+    void reset() {
+      added.clear();
+      suspends = null;
+      finish = false;
+    }
+  }
+
+  private class DeterministicProcess extends Process {
+    private final Iteration iteration;
+    private Entry<T> current;
+
+    public DeterministicProcess(int id) {
+      super(id);
+      iteration = new Iteration(id);
+    }
+
+    @Override
+    protected void doCall() throws Exception {
+      Iteration.setCurrentIteration(iteration);
+      try {
+        switch (phase) {
+        case DRAIN:
+          if (getThreadId() == 0) {
+            T item;
+            while ((item = worklist.poll(this)) != null) {
+              pending.add(item);
+            }
+          }
+          break;
+        case INSPECT:
+        case EXECUTE:
+          int size = window.size();
+          int start;
+          while ((start = next.getAndAdd(CHUNK_SIZE)) < size) {
+            int end = Math.min(size, start + CHUNK_SIZE);
+            for (int i = start; i < end; i++) {
+              if (phase == INSPECT) {
+                inspect(window.get(i));
+              } else {
+                execute(window.get(i));
+              }
+            }
+          }
+          break;
+        default:
+          break;
+        }
+      } finally {
+        current = null;
+        Iteration.setCurrentIteration(null);
+        if (numFinished.incrementAndGet() == numThreads) {
+          finishPhase();
+        }
+      }
+    }
+
+    private void inspect(Entry<T> entry) throws ExecutionException {
+      current = entry;
+      int consecAborts = 0;
+      while (true) {
+        try {
+          callBody(entry);
+        } catch (IterationAbortException _) {
+          iteration.performAbort();
+          contentionManager.onAbort(iteration, ++consecAborts);
+          continue;
+        }
+
+        List<Lockable> locked = iteration.getLocked();
+        entry.neighborhood = locked.toArray(new Lockable[locked.size()]);
+        for (Lockable lockable : entry.neighborhood) {
+          mark(lockable.getOwner(), entry.position);
+        }
+        iteration.performAbort();
+        return;
+      }
+    }
+
+    private void execute(Entry<T> entry) throws ExecutionException {
+      if (!isWinner(entry)) {
+        numAborted++;
+        count(LoopMetrics.ABORTS, 1);
+        return;
+      }
+
+      entry.won = true;
+      current = entry;
+      int consecAborts = 0;
+      while (true) {
+        entry.reset();
+        try {
+          callBody(entry);
+        } catch (IterationAbortException _) {
+          // Only if the body touches data it did not touch when inspected
+          iteration.performAbort();
+          numAborted++;
+          contentionManager.onAbort(iteration, ++consecAborts);
+          continue;
+        }
+
+        Features.getReplayFeature().onCommit(iteration, getIterationId(), entry.item);
+        iteration.performCommit(true);
+        numCommitted++;
+        count(LoopMetrics.POLLS, 1);
+        count(LoopMetrics.COMMITS, 1);
+        recordCpuId();
+        return;
+      }
+    }
+
+    private void callBody(Entry<T> entry) throws ExecutionException {
+      try {
+        body.call(entry.item, this);
+      } catch (IterationAbortException e) {
+        throw e;
+      } catch (WorkNotProgressiveException _) {
+      } catch (WorkNotUsefulException _) {
+      } catch (Throwable e) {
+        iteration.performAbort();
+        throw new ExecutionException(e);
+      }
+    }
+
+    @Override
+    public final void add(T t) {
+      add(t, MethodFlag.ALL);
+    }
+
+    @Override
+    public void add(T t, byte flags) {
+      if (phase == EXECUTE) {
+        current.added.add(t);
+      }
+    }
+
+    @Override
+    public void finish() {
+      if (phase == EXECUTE) {
+        current.finish = true;
+      }
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+      if (phase == EXECUTE) {
+        if (current.suspends == null) {
+          current.suspends = new ArrayList<Callback>();
+        }
+        current.suspends.add(call);
+      }
+    }
+
+    @Override
+    public int getIterationId() {
+      return getThreadId();
+    }
+  }
+}
@@ -31,6 +31,8 @@ interface Executor {
 
   public void onUndo(Iteration it, Callback action);
 
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3);
+
   public void onRelease(Iteration it, ReleaseCallback action);
 
   public boolean isSerial();
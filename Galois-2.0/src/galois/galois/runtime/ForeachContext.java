@@ -76,5 +76,14 @@ public interface ForeachContext<T> {
 
   public int getThreadId();
 
+  /**
+   * Returns the socket the calling thread is placed on, from 0 to
+   * {@link GaloisRuntime#getNumSockets()} - 1. Worklists use it to keep work
+   * on the socket that created it.
+   * 
+   * @return  the socket id of the calling thread
+   */
+  public int getSocketId();
+
   public int getIterationId();
 }
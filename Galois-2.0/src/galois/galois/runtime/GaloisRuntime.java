@@ -21,16 +21,19 @@ kind.
 package galois.runtime;
 
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -42,14 +45,19 @@ import util.Reflection;
 import util.RuntimeStatistics;
 import util.Sampler;
 import util.StackSampler;
+import util.StackStatistics;
 import util.Statistics;
 import util.SystemProperties;
+import fn.IntLambda2Void;
+import fn.Lambda;
 import fn.Lambda2Void;
 import fn.Lambda3Void;
 import fn.LambdaVoid;
 import galois.objects.Mappable;
 import galois.objects.MethodFlag;
+import galois.runtime.wl.IntWorklist;
 import galois.runtime.wl.OrderableWorklist;
+import galois.runtime.wl.Ordered;
 import galois.runtime.wl.ParameterOrderedWorklist;
 import galois.runtime.wl.ParameterUnorderedWorklist;
 import galois.runtime.wl.ParameterWorklist;
@@ -65,6 +73,25 @@ public final class GaloisRuntime {
   private static Logger logger = Logger.getLogger("galois.runtime.GaloisRuntime");
 
   private static final int ITERATION_MULTIPLIER = SystemProperties.getIntProperty("iterationMultiplier", 1);
+  /**
+   * Run executor processes on virtual threads multiplexed over one carrier thread per
+   * requested thread
+   */
+  private static final boolean VIRTUAL_THREADS = SystemProperties.getBooleanProperty("virtualThreads", false);
+  /**
+   * Number of logical workers (virtual threads) per carrier thread when using virtual threads
+   */
+  private static final int VIRTUAL_THREAD_MULTIPLIER = SystemProperties.getIntProperty("virtualThreadMultiplier", 4);
+  /**
+   * Interval in milliseconds between stack samples taken with <code>-g</code> or
+   * <code>collapsedStacks</code>
+   */
+  private static final int STACK_SAMPLE_INTERVAL = SystemProperties.getIntProperty("stackSampleInterval", 100);
+  /**
+   * Frames of these packages are dropped from the bottom of collapsed stacks so that
+   * they start at the loop body
+   */
+  private static final String[] RUNTIME_FRAME_PREFIXES = { "galois.runtime." };
   private static GaloisRuntime instance = null;
 
   private boolean invalid;
@@ -72,9 +99,15 @@ public final class GaloisRuntime {
   private final boolean useSerial;
   private final ReplayFeature.Type replayType;
   private final int maxThreads;
+  private final boolean useVirtualThreads;
 
   private final int maxIterations;
   private final boolean moreStats;
+  /**
+   * charges allocation and GC pauses to loops, null unless enabled by <code>--alloc</code>
+   * or the property <code>allocationStats</code>
+   */
+  private final AllocationAccounting allocationAccounting;
   private final boolean ignoreUserFlags;
 
   private final ThreadSuspender threadSuspender;
@@ -82,21 +115,42 @@ public final class GaloisRuntime {
   private final Executor root;
   private ExecutorFrame current;
   private static byte currentMask;
+  /**
+   * number of loops started, used to label stack samples
+   */
+  private int numLoops;
 
   private GaloisRuntime(int numThreads, boolean useParameter, boolean useSerial, ReplayFeature.Type replayType,
-      boolean moreStats, boolean ignoreUserFlags) {
+      boolean moreStats, boolean allocationStats, boolean ignoreUserFlags) {
+    boolean virtual = VIRTUAL_THREADS && !useParameter && !useSerial && VirtualThreads.isSupported();
+    if (VIRTUAL_THREADS && !virtual && !useParameter && !useSerial) {
+      logger.warning("Virtual threads not supported by this JVM, using platform threads");
+    }
+    if (virtual) {
+      // Oversubscribe logical workers but not cores
+      VirtualThreads.configureCarriers(numThreads);
+      numThreads *= Math.max(1, VIRTUAL_THREAD_MULTIPLIER);
+    }
     this.maxIterations = ITERATION_MULTIPLIER * numThreads;
     this.maxThreads = useParameter ? 1 : numThreads;
     this.useParameter = useParameter;
     this.useSerial = useSerial;
     this.replayType = replayType;
     this.moreStats = moreStats;
+    if (allocationStats || SystemProperties.getBooleanProperty("allocationStats", false)) {
+      allocationAccounting = new AllocationAccounting();
+    } else {
+      allocationAccounting = null;
+    }
     this.ignoreUserFlags = ignoreUserFlags;
 
-    threadSuspender = new ThreadSuspender(maxThreads);
+    ThreadPool pool = new ThreadPool(numThreads, virtual);
+    // the pool falls back to platform threads if it cannot create virtual ones
+    this.useVirtualThreads = pool.isVirtual();
+    threadSuspender = new ThreadSuspender(maxThreads, pool);
     stack = new ArrayDeque<ExecutorFrame>();
     root = new DummyExecutor();
-    current = new ExecutorFrame(new ThreadPool(numThreads), root, MethodFlag.NONE);
+    current = new ExecutorFrame(pool, root, MethodFlag.NONE, null);
     currentMask = current.mask;
   }
 
@@ -104,12 +158,13 @@ public final class GaloisRuntime {
    * Called by the testing framework to reset the runtime.
    */
   private static void initialize(int numThreads, boolean useParameter, boolean useSerial,
-      ReplayFeature.Type replayType, boolean moreStats, boolean ignoreUserFlags) {
+      ReplayFeature.Type replayType, boolean moreStats, boolean allocationStats, boolean ignoreUserFlags) {
     if (instance != null) {
       instance.invalidate();
     }
 
-    instance = new GaloisRuntime(numThreads, useParameter, useSerial, replayType, moreStats, ignoreUserFlags);
+    instance = new GaloisRuntime(numThreads, useParameter, useSerial, replayType, moreStats, allocationStats,
+        ignoreUserFlags);
   }
 
   /**
@@ -120,7 +175,7 @@ public final class GaloisRuntime {
   public static GaloisRuntime getRuntime() {
     if (instance == null) {
       // Use default serial Runtime
-      initialize(1, false, true, ReplayFeature.Type.NO, false, false);
+      initialize(1, false, true, ReplayFeature.Type.NO, false, false, false);
     }
     return instance;
   }
@@ -193,6 +248,171 @@ public final class GaloisRuntime {
     getRuntime().runOrderedBody(initial, body, priority);
   }
 
+  /**
+   * Creates an ordered Galois iterator that applies a function over all elements in some
+   * initial collection without speculation. Additional elements may be added during
+   * iteration. Elements are processed strictly according to some order.
+   * 
+   * <p>
+   * Before an element is processed, <code>neighborhood</code> is applied to it. It must touch
+   * every object that <code>body</code> will touch for that element, but modify none. The
+   * runtime uses these neighborhoods to find the elements that do not depend on any earlier
+   * pending element, and only applies <code>body</code> to those, so iterations never abort.
+   * Additional elements must not be ordered before the element that added them. Since an
+   * element may add one that is ordered just after it, only elements ordered the same as
+   * the earliest pending element are processed together; see
+   * {@link #foreachOrdered(Iterable, Lambda2Void, Lambda2Void, Lambda, galois.galois.runtime.wl.Priority.Rule)}
+   * to expose more parallelism.
+   * 
+   * @param <T>           type of elements to iterate over
+   * @param initial       initial elements to iterate over
+   * @param neighborhood  function that touches the objects accessed by <code>body</code>
+   * @param body          function to apply
+   * @param priority      specification of the order elements are processed
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachOrdered(Mappable, Lambda2Void, Lambda2Void, galois.galois.runtime.wl.Priority.Rule)
+   */
+  public static <T> void foreachOrdered(Iterable<T> initial, Lambda2Void<T, ForeachContext<T>> neighborhood,
+      Lambda2Void<T, ForeachContext<T>> body, Rule priority) throws ExecutionException {
+    getRuntime().runOrderedBody(initial, null, neighborhood, body, null, priority);
+  }
+
+  /**
+   * Creates an ordered Galois iterator that applies a function over all elements in some
+   * initial collection without speculation. Additional elements may be added during
+   * iteration. Elements are processed strictly according to some order.
+   * 
+   * @param <T>           type of elements to iterate over
+   * @param initial       initial elements to iterate over
+   * @param neighborhood  function that touches the objects accessed by <code>body</code>
+   * @param body          function to apply
+   * @param priority      specification of the order elements are processed
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachOrdered(Iterable, Lambda2Void, Lambda2Void, galois.galois.runtime.wl.Priority.Rule)
+   */
+  public static <T> void foreachOrdered(Mappable<T> initial, Lambda2Void<T, ForeachContext<T>> neighborhood,
+      Lambda2Void<T, ForeachContext<T>> body, Rule priority) throws ExecutionException {
+    getRuntime().runOrderedBody(null, initial, neighborhood, body, null, priority);
+  }
+
+  /**
+   * Creates an ordered Galois iterator that applies a function over all elements in some
+   * initial collection without speculation. Additional elements may be added during
+   * iteration. Elements are processed strictly according to some order.
+   * 
+   * <p>
+   * Like {@link #foreachOrdered(Iterable, Lambda2Void, Lambda2Void, galois.galois.runtime.wl.Priority.Rule)},
+   * but <code>earliestAdded</code> maps an element to a lower bound on the elements it may
+   * add: any element added while processing <code>x</code> must not be ordered before
+   * <code>earliestAdded.call(x)</code>, which itself must not be ordered before
+   * <code>x</code>. Pending elements ordered no later than the bounds of all earlier
+   * pending elements are processed together. In a discrete event simulation, for instance,
+   * the bound of an event is an event at its time plus the minimum delay of the model.
+   * 
+   * @param <T>            type of elements to iterate over
+   * @param initial        initial elements to iterate over
+   * @param neighborhood   function that touches the objects accessed by <code>body</code>
+   * @param body           function to apply
+   * @param earliestAdded  lower bound on the elements added when applying <code>body</code>
+   * @param priority       specification of the order elements are processed
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachOrdered(Mappable, Lambda2Void, Lambda2Void, Lambda, galois.galois.runtime.wl.Priority.Rule)
+   */
+  public static <T> void foreachOrdered(Iterable<T> initial, Lambda2Void<T, ForeachContext<T>> neighborhood,
+      Lambda2Void<T, ForeachContext<T>> body, Lambda<T, T> earliestAdded, Rule priority) throws ExecutionException {
+    getRuntime().runOrderedBody(initial, null, neighborhood, body, earliestAdded, priority);
+  }
+
+  /**
+   * Creates an ordered Galois iterator that applies a function over all elements in some
+   * initial collection without speculation. Additional elements may be added during
+   * iteration. Elements are processed strictly according to some order.
+   * 
+   * @param <T>            type of elements to iterate over
+   * @param initial        initial elements to iterate over
+   * @param neighborhood   function that touches the objects accessed by <code>body</code>
+   * @param body           function to apply
+   * @param earliestAdded  lower bound on the elements added when applying <code>body</code>
+   * @param priority       specification of the order elements are processed
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachOrdered(Iterable, Lambda2Void, Lambda2Void, Lambda, galois.galois.runtime.wl.Priority.Rule)
+   */
+  public static <T> void foreachOrdered(Mappable<T> initial, Lambda2Void<T, ForeachContext<T>> neighborhood,
+      Lambda2Void<T, ForeachContext<T>> body, Lambda<T, T> earliestAdded, Rule priority) throws ExecutionException {
+    getRuntime().runOrderedBody(null, initial, neighborhood, body, earliestAdded, priority);
+  }
+
+  /**
+   * Creates a Galois iterator that applies a function over all elements in some initial
+   * collection in bulk-synchronous rounds. Elements added in a round are processed in the
+   * next round, and the iterator finishes after a round that adds no elements. Elements
+   * of a round are processed concurrently without speculation: no abstract locks are
+   * acquired and no undo information is kept, so the function must only make updates
+   * that are safe to run concurrently.
+   * 
+   * @param <T>       type of elements to iterate over
+   * @param initial   initial elements to iterate over
+   * @param body      function to apply
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachRounds(Iterable, Lambda2Void, RoundCallback)
+   */
+  public static <T> void foreachRounds(Iterable<T> initial, Lambda2Void<T, RoundContext<T>> body)
+      throws ExecutionException {
+    getRuntime().runRounds(initial, body, null);
+  }
+
+  /**
+   * Creates a Galois iterator that applies a function over all elements in some initial
+   * collection in bulk-synchronous rounds, and calls a function serially at the end of
+   * every round with the round's reduction (see {@link RoundContext#reduce(long)}).
+   * 
+   * @param <T>       type of elements to iterate over
+   * @param initial   initial elements to iterate over
+   * @param body      function to apply
+   * @param callback  function to call at the end of every round
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreachRounds(Iterable, Lambda2Void)
+   */
+  public static <T> void foreachRounds(Iterable<T> initial, Lambda2Void<T, RoundContext<T>> body,
+      RoundCallback callback) throws ExecutionException {
+    getRuntime().runRounds(initial, body, callback);
+  }
+
+  /**
+   * Creates an unordered Galois iterator that concurrently applies a function over all
+   * integers in some initial array, such as indices of nodes or of other dense arrays.
+   * Additional integers may be added during iteration. Integers are kept in
+   * <code>int</code> arrays rather than as objects, see {@link IntWorklist}. Integers
+   * are processed without speculation: no abstract locks are acquired and no undo
+   * information is kept, so the function must only make updates that are safe to run
+   * concurrently. Integers are processed in the default order
+   * ({@link Priority#defaultOrder()}).
+   * 
+   * @param initial   initial integers to iterate over, must be non-negative
+   * @param body      function to apply
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreach(int[], IntLambda2Void, galois.runtime.wl.Priority.Rule)
+   */
+  public static void foreach(int[] initial, IntLambda2Void<IntForeachContext> body) throws ExecutionException {
+    getRuntime().runIntBody(initial, body, Priority.defaultOrder());
+  }
+
+  /**
+   * Creates an unordered Galois iterator that concurrently applies a function over all
+   * integers in some initial array. Integers are processed in the given order, which must
+   * consist of a single rule that supports integers (see {@link Priority#makeInt(Rule)}).
+   * 
+   * @param initial   initial integers to iterate over, must be non-negative
+   * @param body      function to apply
+   * @param priority  specification of the order integers are processed
+   * @throws ExecutionException  if there is an uncaught exception during execution
+   * @see #foreach(int[], IntLambda2Void)
+   */
+  public static void foreach(int[] initial, IntLambda2Void<IntForeachContext> body, Rule priority)
+      throws ExecutionException {
+    getRuntime().runIntBody(initial, body, priority);
+  }
+
   /**
    * Creates an unordered Galois iterator that concurrently applies a function over all elements
    * in some initial collection. In contrast to
@@ -271,6 +491,23 @@ public final class GaloisRuntime {
     current.executor.onUndo(it, action);
   }
 
+  /**
+   * Records an action to be performed if the given iteration aborts. Unlike
+   * {@link #onUndo(Iteration, Callback)}, the state needed by the action is passed as
+   * operands, so recording the action does not allocate a closure.
+   * 
+   * @param it      the current iteration
+   * @param action  the undo action
+   * @param arg0    first object operand of the action
+   * @param arg1    second object operand of the action
+   * @param arg2    third object operand of the action
+   * @param arg3    integer operand of the action
+   */
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    checkValidity();
+    current.executor.onUndo(it, action, arg0, arg1, arg2, arg3);
+  }
+
   public void onRelease(Iteration it, ReleaseCallback action) {
     checkValidity();
     current.executor.onRelease(it, action);
@@ -303,6 +540,17 @@ public final class GaloisRuntime {
     return maxThreads;
   }
 
+  /**
+   * Gets the number of sockets the threads of the Runtime are placed on.
+   * See {@link ForeachContext#getSocketId()}.
+   *
+   * @return number of sockets
+   */
+  public int getNumSockets() {
+    checkValidity();
+    return Topology.getNumSockets();
+  }
+
   public int getMaxIterations() {
     checkValidity();
     return maxIterations;
@@ -323,11 +571,21 @@ public final class GaloisRuntime {
     stack.push(current);
     current = frame;
     currentMask = current.mask;
+    frameChanged();
   }
 
   private void pop() {
     current = stack.pop();
     currentMask = current.mask;
+    frameChanged();
+  }
+
+  private void frameChanged() {
+    StackSampler.setLabel(current.label);
+    LoopMetrics metrics = LoopMetrics.getInstance();
+    if (metrics != null) {
+      metrics.setFrame(stack.size(), current.executor);
+    }
   }
 
   void replaceWithRootContextAndCall(final Callback callback) throws ExecutionException {
@@ -353,32 +611,46 @@ public final class GaloisRuntime {
 
   private IterationStatistics pushContextAndCall(Executor executor, Callable<IterationStatistics> callback)
       throws ExecutionException {
-    boolean suspended = false;
+    return pushContextAndCall(executor, executor.isSerial() ? MethodFlag.NONE : MethodFlag.ALL, callback);
+  }
+
+  /**
+   * @param mask  the method flags checked while the executor runs, see {@link #needMethodFlag(byte, byte)}
+   */
+  private IterationStatistics pushContextAndCall(Executor executor, byte mask, Callable<IterationStatistics> callback)
+      throws ExecutionException {
+    AtomicBoolean resumed = null;
     if (!current.executor.isSerial()) {
+      long start = Trace.ENABLED ? System.nanoTime() : 0;
       try {
-        // TODO(ddn): Can lead to deadlock (infinite livelock) when using mappable
-        // iterators because one thread sleeps holding its locks and the other threads
-        // keep executing but they can never suspend their executor
-        if (current.executor instanceof MappableExecutor)
-          throw new Error("Not yet supported");
-        threadSuspender.suspend(current.executor);
-        suspended = true;
+        resumed = threadSuspender.suspend(current.executor);
       } catch (InterruptedException e) {
         throw new ExecutionException(e);
+      } finally {
+        if (Trace.ENABLED) {
+          Trace.record(Trace.SUSPENDED, start);
+        }
       }
     }
 
     boolean isSerial = executor.isSerial();
-    byte mask = isSerial ? MethodFlag.NONE : MethodFlag.ALL;
-    // Try to reuse thread pool if possible
-    ThreadPool pool;
-    if (suspended) {
-      pool = new ThreadPool(maxThreads);
-    } else {
-      pool = current.pool;
+    // The threads of a suspended executor are idle or lent to the pool
+    // (see suspendAndHelp()), so the inner executor reuses them
+    ThreadPool pool = current.pool;
+
+    AllocationAccounting.Account account = null;
+    if (allocationAccounting != null) {
+      Thread[] threads = pool.getThreads();
+      Thread self = Thread.currentThread();
+      if (!Arrays.asList(threads).contains(self)) {
+        threads = Arrays.copyOf(threads, threads.length + 1);
+        threads[threads.length - 1] = self;
+      }
+      account = allocationAccounting.begin(executor, threads);
     }
 
-    push(new ExecutorFrame(pool, executor, mask));
+    String label = "loop" + numLoops++ + ":" + executor.getClass().getSimpleName();
+    push(new ExecutorFrame(pool, executor, mask, label));
     try {
       if (isSerial)
         return __stackSamplerRecordMe(callback);
@@ -387,10 +659,11 @@ public final class GaloisRuntime {
     } catch (Exception e) {
       throw new ExecutionException(e);
     } finally {
-      // Shutdown newly created thread pools
-      if (pool != null && suspended)
-        pool.shutdown();
+      if (account != null)
+        Launcher.getLauncher().addStats(allocationAccounting.end(account));
       pop();
+      if (resumed != null)
+        resumed.set(true);
     }
   }
 
@@ -413,6 +686,17 @@ public final class GaloisRuntime {
     wl.finishAddInitial();
   }
 
+  private void initializeWorklist(IntWorklist wl, int[] initial) {
+    // serially, all elements must be reachable from thread 0
+    int numThreads = useSerial ? 1 : maxThreads;
+    SimpleIntContext ctx = new SimpleIntContext();
+    for (int i = 0; i < initial.length; i++) {
+      ctx.tid = i % numThreads;
+      wl.addInitial(initial[i], ctx);
+    }
+    wl.finishAddInitial();
+  }
+
   private <T, S> void initializeWorklist(final ParameterWorklist<T, S> wl, Iterable<T> initial, Mappable<T> mappable)
       throws ExecutionException {
     if (initial != null) {
@@ -453,6 +737,30 @@ public final class GaloisRuntime {
     runBody(initial, null, body, ExecutorType.ORDERED, priority);
   }
 
+  private <T> void runOrderedBody(Iterable<T> initial, Mappable<T> mappable,
+      final Lambda2Void<T, ForeachContext<T>> neighborhood, final Lambda2Void<T, ForeachContext<T>> body,
+      final Lambda<T, T> earliestAdded, Rule priority) throws ExecutionException {
+    checkValidity();
+    if (replayType == ReplayFeature.Type.PLAYBACK || useSerial || useParameter) {
+      // these executors do not speculate in parallel, neighborhoods are not needed
+      runBody(initial, mappable, body, ExecutorType.ORDERED, priority);
+      return;
+    }
+
+    final OrderableWorklist<T> wl = Priority.makeOrdered(priority);
+    final KDGOrderedExecutor<T> ex = new KDGOrderedExecutor<T>(wl);
+    initializeWorklist(wl, initial, mappable);
+    IterationStatistics stats = pushContextAndCall(ex, new Callable<IterationStatistics>() {
+      @Override
+      public IterationStatistics call() throws Exception {
+        return ex.call(neighborhood, body, earliestAdded);
+      }
+    });
+
+    Launcher.getLauncher().addStats(stats);
+    Features.getReplayFeature().onFinish();
+  }
+
   @SuppressWarnings("unchecked")
   private <T> void runBody(Iterable<T> initial, Mappable<T> mappable, final Lambda2Void<T, ForeachContext<T>> body,
       ExecutorType type, Rule priority) throws ExecutionException {
@@ -501,10 +809,25 @@ public final class GaloisRuntime {
           }
         });
       }
+    } else if (replayType == ReplayFeature.Type.DETERMINISTIC && type != ExecutorType.ORDERED) {
+      // start from the serial order so the result does not depend on how the
+      // initial items are distributed among threads
+      final Worklist<T> wl = Priority.makeSerial(priority);
+      final DeterministicExecutor<T> ex = new DeterministicExecutor<T>();
+      initializeWorklist(wl, initial, mappable);
+      stats = pushContextAndCall(ex, new Callable<IterationStatistics>() {
+        @Override
+        public IterationStatistics call() throws Exception {
+          return ex.call(body, wl);
+        }
+      });
     } else {
       if (type == ExecutorType.ORDERED) {
+        ContentionManager cm = Priority.makeContentionManager(priority);
         final OrderableWorklist<T> wl = Priority.makeOrdered(priority);
         final OrderedExecutor<T> ex = new OrderedExecutor<T>(wl);
+        if (cm != null)
+          ex.setContentionManager(cm);
         initializeWorklist(wl, initial, mappable);
         stats = pushContextAndCall(ex, new Callable<IterationStatistics>() {
           @Override
@@ -524,8 +847,14 @@ public final class GaloisRuntime {
         });
       } else {
         assert type == ExecutorType.UNORDERED;
+        ContentionManager cm = Priority.makeContentionManager(priority);
         final Worklist<T> wl = Priority.makeUnordered(priority);
         final UnorderedExecutor<T> ex = new UnorderedExecutor<T>();
+        if (cm != null)
+          ex.setContentionManager(cm);
+        int lockCoalescing = Priority.getLockCoalescing(priority);
+        if (lockCoalescing >= 0)
+          ex.setLockCoalescing(lockCoalescing);
         initializeWorklist(wl, initial, mappable);
         stats = pushContextAndCall(ex, new Callable<IterationStatistics>() {
           @Override
@@ -542,6 +871,67 @@ public final class GaloisRuntime {
     Features.getReplayFeature().onFinish();
   }
 
+  private <T> void runRounds(final Iterable<T> initial, final Lambda2Void<T, RoundContext<T>> body,
+      RoundCallback callback) throws ExecutionException {
+    checkValidity();
+    final BulkSynchronousExecutor<T> ex = new BulkSynchronousExecutor<T>(callback);
+    // no conflict detection or undo
+    IterationStatistics stats = pushContextAndCall(ex, MethodFlag.NONE, new Callable<IterationStatistics>() {
+      @Override
+      public IterationStatistics call() throws Exception {
+        return ex.call(initial, body);
+      }
+    });
+
+    Launcher.getLauncher().addStats(stats);
+  }
+
+  private void runIntBody(int[] initial, final IntLambda2Void<IntForeachContext> body, Rule priority)
+      throws ExecutionException {
+    checkValidity();
+    final IntWorklist wl = Priority.makeInt(priority);
+    initializeWorklist(wl, initial);
+
+    IterationStatistics stats;
+    if (useSerial) {
+      final SerialIntExecutor ex = new SerialIntExecutor();
+      stats = pushContextAndCall(ex, new Callable<IterationStatistics>() {
+        @Override
+        public IterationStatistics call() throws Exception {
+          return ex.call(body, wl);
+        }
+      });
+    } else {
+      final IntExecutor ex = new IntExecutor();
+      // no conflict detection or undo
+      stats = pushContextAndCall(ex, MethodFlag.NONE, new Callable<IterationStatistics>() {
+        @Override
+        public IterationStatistics call() throws Exception {
+          return ex.call(body, wl);
+        }
+      });
+    }
+
+    Launcher.getLauncher().addStats(stats);
+  }
+
+  /**
+   * Runs an ordered loop regardless of replay type. Used to play back recorded
+   * iterations in parallel.
+   */
+  <T> IterationStatistics callOrdered(Iterable<T> initial, Comparator<T> comp,
+      final Lambda2Void<T, ForeachContext<T>> body) throws ExecutionException {
+    final OrderableWorklist<T> wl = Priority.makeOrdered(Priority.first(Ordered.class, comp));
+    final OrderedExecutor<T> ex = new OrderedExecutor<T>(wl);
+    initializeWorklist(wl, initial, null);
+    return pushContextAndCall(ex, new Callable<IterationStatistics>() {
+      @Override
+      public IterationStatistics call() throws Exception {
+        return ex.call(body, wl);
+      }
+    });
+  }
+
   @SuppressWarnings("unchecked")
   private <T> void runBody(final Mappable<T> mappable, final Object body, final MappableType type, final Object... args)
       throws ExecutionException {
@@ -631,6 +1021,18 @@ public final class GaloisRuntime {
     return moreStats;
   }
 
+  /**
+   * Returns whether executor processes run on virtual threads. In this case,
+   * {@link #getMaxThreads()} is the number of logical workers, which may exceed the
+   * number of carrier threads.
+   * 
+   * @return  true if using virtual threads
+   */
+  public boolean useVirtualThreads() {
+    checkValidity();
+    return useVirtualThreads;
+  }
+
   private static enum ExecutorType {
     BAREBONES, UNORDERED, ORDERED;
   }
@@ -639,24 +1041,40 @@ public final class GaloisRuntime {
     final ThreadPool pool;
     final Executor executor;
     final byte mask;
+    final String label;
 
-    public ExecutorFrame(ThreadPool pool, Executor executor, byte mask) {
+    public ExecutorFrame(ThreadPool pool, Executor executor, byte mask, String label) {
       this.pool = pool;
       this.executor = executor;
       this.mask = mask;
+      this.label = label;
     }
   }
 
+  /**
+   * Called by a process of a suspended executor that cannot give its thread back to the
+   * thread pool, e.g., in the middle of iterating over a mappable. Counts the process as
+   * suspended and lends its thread to the executor that caused the suspension until
+   * that executor finishes.
+   */
+  void suspendAndHelp() {
+    threadSuspender.callAndHelp();
+  }
+
   private static class ThreadSuspender implements Callback {
     private final ReentrantLock lock;
     private final Condition cond;
     private final int numThreads;
+    private final ThreadPool pool;
 
     private int numSuspended;
     private boolean once;
+    private AtomicBoolean resumed;
+    private long firstInnerCall;
 
-    public ThreadSuspender(int numThreads) {
+    public ThreadSuspender(int numThreads, ThreadPool pool) {
       this.numThreads = numThreads;
+      this.pool = pool;
       lock = new ReentrantLock();
       cond = lock.newCondition();
     }
@@ -677,17 +1095,34 @@ public final class GaloisRuntime {
       numSuspended = 0;
     }
 
-    public void suspend(Executor executor) throws InterruptedException {
+    /**
+     * Suspends all the processes of the given executor but the calling one.
+     * 
+     * @return  flag to set when the suspended processes may resume
+     */
+    public AtomicBoolean suspend(Executor executor) throws InterruptedException {
       lock.lock();
       try {
         if (once) {
           abort();
-          return;
+          return null;
         } else {
           once = true;
         }
 
-        executor.suspend(this);
+        AtomicBoolean retval = new AtomicBoolean();
+        resumed = retval;
+        firstInnerCall = pool.getNumCalls();
+        boolean suspended = false;
+        try {
+          executor.suspend(this);
+          suspended = true;
+        } finally {
+          if (!suspended) {
+            // executor does not allow nesting, do not make the other processes retry forever
+            once = false;
+          }
+        }
 
         while (numSuspended < numThreads - 1) {
           cond.await();
@@ -696,9 +1131,29 @@ public final class GaloisRuntime {
         executor.suspendDone();
         reset();
         commit();
+        return retval;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void callAndHelp() {
+      AtomicBoolean flag;
+      long firstCall;
+      lock.lock();
+      try {
+        // read under the lock, a nested suspension may replace them as soon as we are counted
+        flag = resumed;
+        firstCall = firstInnerCall;
+        call();
       } finally {
         lock.unlock();
       }
+      long start = Trace.ENABLED ? System.nanoTime() : 0;
+      pool.helpUntil(flag, firstCall);
+      if (Trace.ENABLED) {
+        Trace.record(Trace.SUSPENDED, start);
+      }
     }
 
     @Override
@@ -733,6 +1188,10 @@ public final class GaloisRuntime {
     public void onUndo(Iteration it, Callback action) {
     }
 
+    @Override
+    public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    }
+
     public boolean isSerial() {
       return true;
     }
@@ -761,12 +1220,56 @@ public final class GaloisRuntime {
       return current.getAndIncrement() % maxThreads;
     }
 
+    @Override
+    public int getSocketId() {
+      // deal a thread as getThreadId does, so the result does not depend on the order of calls
+      return Topology.getSocket(getThreadId());
+    }
+
     @Override
     public int getIterationId() {
       throw new UnsupportedOperationException("Not supported yet.");
     }
   }
 
+  /**
+   * Context for adding initial elements; each element is given to the thread set in
+   * <code>tid</code>
+   */
+  private static class SimpleIntContext implements IntForeachContext {
+    private int tid;
+
+    @Override
+    public void add(int i) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void finish() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getThreadId() {
+      return tid;
+    }
+
+    @Override
+    public int getSocketId() {
+      return Topology.getSocket(tid);
+    }
+
+    @Override
+    public int getIterationId() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   private static void dumpStatistics(List<Statistics> stats, PrintStream summaryOut, PrintStream fullOut) {
     if (stats.isEmpty())
       return;
@@ -808,8 +1311,17 @@ public final class GaloisRuntime {
     System.err.println(" -s                 : use serial data structures and executor");
     System.err.println(" -dr                : record execution for deterministic replay");
     System.err.println(" -dp                : playback execution from deterministic replay");
+    System.err.println(" --dpp              : playback execution from deterministic replay in parallel");
+    System.err.println("                      (use the number of threads of the recording)");
+    System.err.println(" --det              : execute unordered loops deterministically, independent");
+    System.err.println("                      of the number of threads and the schedule");
     System.err.println(" -g                 : enable additional statistics.");
     System.err.println("                      Currently: stack profiling, processor utilization");
+    System.err.println("                      Set property collapsedStacks=<file> to also write stack");
+    System.err.println("                      samples for flame graphs (implies stack profiling)");
+    System.err.println(" --alloc            : charge allocated bytes and GC pauses to loops");
+    System.err.println(" -m <interval ms>   : publish live loop metrics through JMX and print them");
+    System.err.println("                      every interval (0: JMX only)");
     System.err.println(" --help             : print help");
   }
 
@@ -823,9 +1335,11 @@ public final class GaloisRuntime {
     boolean useParameter = false;
     boolean useSerial = false;
     boolean moreStats = false;
+    boolean allocationStats = false;
     boolean ignoreUserFlags = false;
     ReplayFeature.Type replayType = ReplayFeature.Type.NO;
     int samplerInterval = 0;
+    int metricsInterval = -1;
     int numThreads = 1;
     int numRuns = 1;
 
@@ -848,9 +1362,17 @@ public final class GaloisRuntime {
       } else if (arg.equals("--dp")) {
         replayType = ReplayFeature.Type.PLAYBACK;
         useSerial = true;
+      } else if (arg.equals("--dpp")) {
+        replayType = ReplayFeature.Type.PLAYBACK;
+      } else if (arg.equals("--det")) {
+        replayType = ReplayFeature.Type.DETERMINISTIC;
       } else if (arg.equals("-g")) {
-        samplerInterval = 100;
+        samplerInterval = STACK_SAMPLE_INTERVAL;
         moreStats = true;
+      } else if (arg.equals("--alloc")) {
+        allocationStats = true;
+      } else if (arg.equals("-m")) {
+        metricsInterval = Integer.parseInt(args[++i]);
       } else if (arg.equals("-i")) {
         ignoreUserFlags = true;
       } else if (arg.equals("--help")) {
@@ -868,6 +1390,11 @@ public final class GaloisRuntime {
       System.exit(1);
     }
 
+    String collapsedStacks = System.getProperty("collapsedStacks");
+    if (collapsedStacks != null) {
+      samplerInterval = STACK_SAMPLE_INTERVAL;
+    }
+
     if (useParameter) {
       samplerInterval = 0;
       numThreads = 1;
@@ -892,15 +1419,28 @@ public final class GaloisRuntime {
         launcher.reset();
       }
 
-      initialize(numThreads, useParameter, useSerial, replayType, moreStats, ignoreUserFlags);
+      initialize(numThreads, useParameter, useSerial, replayType, moreStats, allocationStats, ignoreUserFlags);
       Features.initialize(getRuntime().getMaxIterations(), replayType);
 
       Sampler sampler = StackSampler.start(samplerInterval);
+      Sampler metricsSampler = null;
+      if (metricsInterval >= 0) {
+        metricsSampler = LoopMetricsSampler.start(metricsInterval, LoopMetrics.start(getRuntime().getMaxThreads()));
+      }
       launcher.startTiming();
       try {
         Reflection.invokeStaticMethod(main, "main", new Object[] { mainArgs });
         launcher.stopTiming();
-        launcher.addStats(sampler.stop());
+        Statistics stackStats = sampler.stop();
+        if (collapsedStacks != null && stackStats != null) {
+          PrintStream collapsedOut = new PrintStream(new FileOutputStream(collapsedStacks, i != 0));
+          ((StackStatistics) stackStats).dumpCollapsed(collapsedOut, RUNTIME_FRAME_PREFIXES);
+          collapsedOut.close();
+        }
+        launcher.addStats(stackStats);
+        if (metricsSampler != null) {
+          metricsSampler.stop();
+        }
         long timeWithoutGc = launcher.elapsedTime(true);
         long timeWithGc = launcher.elapsedTime(false);
         if (logger.isLoggable(Level.INFO)) {
@@ -0,0 +1,111 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: Histogram.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.PrintStream;
+
+/**
+ * Histogram of non-negative values with fixed power of two buckets. Bucket <i>b</i>
+ * counts the values in [2<sup>b-1</sup>, 2<sup>b</sup>), and bucket 0 counts zeros.
+ * Adding a value is a handful of instructions, so each thread can keep its own
+ * histograms, which are merged when a loop ends. Not thread-safe.
+ */
+final class Histogram {
+  private static final int NUM_BUCKETS = 65;
+  private final long[] counts;
+  private long count;
+  private long max;
+
+  public Histogram() {
+    counts = new long[NUM_BUCKETS];
+  }
+
+  private static int bucket(long value) {
+    return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+  }
+
+  /**
+   * @return  the largest value that falls into the given bucket
+   */
+  private static long upperBound(int bucket) {
+    return bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  public void add(long value) {
+    counts[bucket(value)]++;
+    count++;
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  public void merge(Histogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    max = Math.max(max, other.max);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns an upper bound of the given quantile, which is exact within a factor of two.
+   * 
+   * @param q  the quantile, between 0 and 1
+   * @return   the largest value of the bucket containing the quantile
+   */
+  public long getQuantile(double q) {
+    long rank = (long) Math.ceil(q * count);
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && seen > 0) {
+        return Math.min(upperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Prints quantiles and the non-empty buckets.
+   * 
+   * @param out   output stream
+   * @param name  what the values are
+   */
+  public void dump(PrintStream out, String name) {
+    out.printf("%s: count: %d p50: %d p90: %d p99: %d p99.9: %d max: %d\n", name, count, getQuantile(0.5),
+        getQuantile(0.9), getQuantile(0.99), getQuantile(0.999), max);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      if (counts[i] != 0) {
+        out.printf("\t[%d, %d]: %d\n", i == 0 ? 0 : 1L << (i - 1), upperBound(i), counts[i]);
+      }
+    }
+  }
+}
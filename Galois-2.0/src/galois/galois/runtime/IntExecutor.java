@@ -0,0 +1,194 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: IntExecutor.java
+
+*/
+
+
+
+package galois.runtime;
+
+import fn.IntLambda2Void;
+import galois.runtime.wl.IntWorklist;
+import galois.runtime.wl.Worklist;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Executor for Galois iterators over integers. Processes poll elements from an
+ * {@link IntWorklist} and apply the loop body to them without boxing.
+ * 
+ * <p>
+ * There is no speculation: iterations acquire no abstract locks, keep no undo logs and
+ * never abort, and commit actions run immediately.
+ * </p>
+ */
+class IntExecutor extends AbstractConcurrentExecutor<Integer> {
+  private IntLambda2Void<IntForeachContext> intBody;
+  private IntWorklist intWorklist;
+
+  IntExecutor() {
+  }
+
+  public IterationStatistics call(IntLambda2Void<IntForeachContext> body, IntWorklist worklist)
+      throws ExecutionException {
+    intBody = body;
+    intWorklist = worklist;
+    return call(null, new WorklistView());
+  }
+
+  @Override
+  public void arbitrate(Iteration current, Iteration conflicter) throws IterationAbortException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void onRelease(Iteration it, ReleaseCallback action) {
+  }
+
+  @Override
+  public void onCommit(Iteration it, Callback action) {
+    action.call();
+  }
+
+  @Override
+  public void onUndo(Iteration it, Callback action) {
+  }
+
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
+  @Override
+  protected Process newProcess(int tid) {
+    return new IntProcess(tid);
+  }
+
+  private class IntProcess extends Process implements IntForeachContext {
+    public IntProcess(int id) {
+      super(id);
+    }
+
+    @Override
+    protected void doCall() throws InterruptedException {
+      try {
+        L1: while (true) {
+          int item;
+
+          while ((item = intWorklist.poll(this)) != IntWorklist.EMPTY) {
+            numCommitted++;
+            count(LoopMetrics.POLLS, 1);
+            count(LoopMetrics.COMMITS, 1);
+            intBody.call(item, this);
+            if (yield) {
+              break L1;
+            }
+          }
+
+          // The worklist may suspend the iterator when it runs out of work
+          if (yield) {
+            break;
+          }
+
+          // Slow check
+          if (isDone()) {
+            break;
+          }
+        }
+      } finally {
+        makeAllDone();
+        wakeupAll();
+      }
+    }
+
+    @Override
+    public void add(int i) {
+      intWorklist.add(i, this);
+      count(LoopMetrics.ADDS, 1);
+      if (someDone()) {
+        wakeupOne();
+      }
+    }
+
+    @Override
+    public final void add(Integer t) {
+      add(t.intValue());
+    }
+
+    @Override
+    public void add(Integer t, byte flags) {
+      add(t.intValue());
+    }
+
+    @Override
+    public void finish() {
+      finish = true;
+      yield = true;
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+      addSuspendThunk(call);
+      yield = true;
+    }
+
+    @Override
+    public int getIterationId() {
+      return getThreadId();
+    }
+  }
+
+  /**
+   * Stands in for the worklist; used only to detect termination
+   */
+  private class WorklistView implements Worklist<Integer> {
+    @Override
+    public Worklist<Integer> newInstance() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(Integer item, ForeachContext<Integer> ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addInitial(Integer item, ForeachContext<Integer> ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer poll(ForeachContext<Integer> ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return intWorklist.isEmpty();
+    }
+
+    @Override
+    public int size() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void finishAddInitial() {
+    }
+  }
+}
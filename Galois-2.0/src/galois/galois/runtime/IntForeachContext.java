@@ -0,0 +1,71 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: IntForeachContext.java
+
+*/
+
+
+
+package galois.runtime;
+
+/**
+ * Reference to the context calling {@link GaloisRuntime#foreach(int[], fn.IntLambda2Void)}.
+ * 
+ * <p>
+ * The counterpart of {@link ForeachContext} for iterators over integers, e.g., node
+ * indices of a {@link galois.objects.graph.LocalComputationGraph}. These iterators do not
+ * speculate, so all methods take effect immediately. The effects of
+ * {@link #suspendWith(Callback)} and {@link #finish()} happen after the threads executing
+ * the iterator finish their current elements.
+ * </p>
+ */
+public interface IntForeachContext {
+  /**
+   * Suspends the current iterator and calls the given function
+   * serially. After the given function completes, the current
+   * iterator resumes execution.
+   * 
+   * @param call  function to suspend with
+   */
+  public void suspendWith(Callback call);
+
+  /**
+   * Finishes executing the current iterator without examining
+   * the rest of the elements on its worklist.
+   */
+  public void finish();
+
+  /**
+   * Adds an element to the worklist of the current iterator.
+   * 
+   * @param i  element to add, must be non-negative
+   */
+  public void add(int i);
+
+  public int getThreadId();
+
+  /**
+   * Returns the socket the calling thread is placed on, from 0 to
+   * {@link GaloisRuntime#getNumSockets()} - 1.
+   * 
+   * @return  the socket id of the calling thread
+   */
+  public int getSocketId();
+
+  public int getIterationId();
+}
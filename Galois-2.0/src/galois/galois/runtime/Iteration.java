@@ -23,9 +23,7 @@ package galois.runtime;
 import galois.objects.Lockable;
 import galois.objects.MethodFlag;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -37,13 +35,13 @@ public class Iteration {
   /**
    * A list of any commit actions
    */
-  private final Deque<Callback> commitActions;
+  private final ActionLog commitActions;
   private final List<ReleaseCallback> releaseActions;
 
   /**
-   * A stack of callbacks to undo any actions the iteration has done
+   * A stack of actions to undo any actions the iteration has done
    */
-  private final Deque<Callback> undoActions;
+  private final ActionLog undoActions;
 
   /**
    * locked objects
@@ -55,11 +53,36 @@ public class Iteration {
    */
   private final int id;
 
+  /**
+   * number of locks acquired since the last commit, including by aborted attempts
+   */
+  private int karma;
+
+  /**
+   * number of locks acquired by the current attempt
+   */
+  private int numAcquired;
+
+  /**
+   * incremented every time this iteration releases its locks
+   */
+  private volatile int releaseEpoch;
+
+  /**
+   * true while this iteration holds locks of already committed iterations
+   */
+  private volatile boolean holdsCoalescedLocks;
+
+  /**
+   * set by other iterations that want a lock held past a commit
+   */
+  private volatile boolean revocationRequested;
+
   public Iteration(int id) {
     this.id = id;
-    this.undoActions = new ArrayDeque<Callback>();
+    this.undoActions = new ActionLog();
     this.releaseActions = new ArrayList<ReleaseCallback>();
-    this.commitActions = new ArrayDeque<Callback>();
+    this.commitActions = new ActionLog();
     this.locked = new ArrayList<Lockable>();
   }
 
@@ -117,19 +140,39 @@ public class Iteration {
       return;
     }
 
+    boolean recorded = false;
     while (!owner.compareAndSet(null, this)) {
-      GaloisRuntime.getRuntime().raiseConflict(this, owner.get());
+      if (!recorded) {
+        ConflictProfiler.record(lockable);
+        recorded = true;
+      }
+      Iteration conflicter = owner.get();
+      if (conflicter != null && conflicter.holdsCoalescedLocks && !conflicter.revocationRequested) {
+        // ask the owner to give up its coalesced locks at its next commit
+        conflicter.revocationRequested = true;
+      }
+      GaloisRuntime.getRuntime().raiseConflict(this, conflicter);
     }
 
     locked.add(lockable);
+    karma++;
+    numAcquired++;
   }
 
   void addCommitAction(Callback c) {
-    commitActions.addLast(c);
+    commitActions.add(c);
+  }
+
+  void addCommitAction(LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    commitActions.add(action, arg0, arg1, arg2, arg3);
   }
 
   void addUndoAction(Callback c) {
-    undoActions.addFirst(c);
+    undoActions.add(c);
+  }
+
+  void addUndoAction(LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+    undoActions.add(action, arg0, arg1, arg2, arg3);
   }
 
   /**
@@ -146,6 +189,7 @@ public class Iteration {
    * Clears undo logs, commit logs, conflict logs
    */
   protected int clearLogs(boolean releaseLocks) {
+    numAcquired = 0;
     undoActions.clear();
     commitActions.clear();
 
@@ -167,6 +211,9 @@ public class Iteration {
       total++;
     }
     locked.clear();
+    holdsCoalescedLocks = false;
+    revocationRequested = false;
+    releaseEpoch++;
     return total;
   }
 
@@ -175,10 +222,7 @@ public class Iteration {
    * logs and releases all held partitions
    */
   int performAbort() {
-    Callback c;
-    while ((c = undoActions.poll()) != null) {
-      c.call();
-    }
+    undoActions.replayReverse();
 
     return clearLogs(true);
   }
@@ -188,11 +232,12 @@ public class Iteration {
    * partitions, and performs any commit actions
    */
   int performCommit(boolean releaseLocks) {
-    Callback c;
-    while ((c = commitActions.poll()) != null) {
-      c.call();
-    }
+    commitActions.replayForward();
+    karma = 0;
 
+    if (!releaseLocks && !locked.isEmpty()) {
+      holdsCoalescedLocks = true;
+    }
     return clearLogs(releaseLocks);
   }
 
@@ -209,4 +254,61 @@ public class Iteration {
   public int getId() {
     return id;
   }
+
+  /**
+   * @return  the objects currently locked by this iteration
+   */
+  List<Lockable> getLocked() {
+    return locked;
+  }
+
+  /**
+   * Returns the number of abstract locks acquired by this iteration since it last
+   * committed, including the locks acquired by aborted attempts. Used by contention
+   * managers as a measure of the work invested in the iteration. The value is read
+   * without synchronization and may be stale when read by other threads.
+   * 
+   * @return  the karma of this iteration
+   */
+  public int getKarma() {
+    return karma;
+  }
+
+  /**
+   * Returns the number of abstract locks acquired by the current attempt of this
+   * iteration, not counting locks it already held from committed iterations.
+   * 
+   * @return  the number of locks acquired
+   */
+  int getNumAcquired() {
+    return numAcquired;
+  }
+
+  /**
+   * @return  the number of actions in the undo log of the current attempt
+   */
+  int getUndoLogSize() {
+    return undoActions.size();
+  }
+
+  /**
+   * Returns a counter that is incremented every time this iteration releases its
+   * locks. A change in the value means that the locks held when the value was first
+   * read have been released.
+   * 
+   * @return  the release epoch of this iteration
+   */
+  public int getReleaseEpoch() {
+    return releaseEpoch;
+  }
+
+  /**
+   * Returns whether another iteration has asked for a lock that this iteration kept
+   * past a commit. The locks should be released at the next commit.
+   * 
+   * @return  true if the locks held by this iteration should be released
+   */
+  boolean isRevocationRequested() {
+    return revocationRequested;
+  }
 }
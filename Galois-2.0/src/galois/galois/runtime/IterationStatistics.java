@@ -34,10 +34,18 @@ import fn.Lambda;
 class IterationStatistics extends Statistics {
   private final Map<Thread, Integer> committed;
   private final Map<Thread, Integer> aborted;
+  private final Histogram iterationTimes;
+  private final Histogram retryDistances;
+  private final Histogram locksPerIteration;
+  private final Histogram undoLogLengths;
 
   public IterationStatistics() {
     committed = new HashMap<Thread, Integer>();
     aborted = new HashMap<Thread, Integer>();
+    iterationTimes = new Histogram();
+    retryDistances = new Histogram();
+    locksPerIteration = new Histogram();
+    undoLogLengths = new Histogram();
   }
 
   @Override
@@ -58,6 +66,17 @@ class IterationStatistics extends Statistics {
     summarizeInts(out, total, "\t");
     out.printf("Abort ratio: %.4f per thread: %s\n", sumAbortRatio, abortRatio);
     summarizeFloats(out, abortRatio, "\t");
+
+    if (iterationTimes.getCount() != 0) {
+      iterationTimes.dump(out, "Committed iteration time (ns)");
+    }
+    if (retryDistances.getCount() != 0) {
+      retryDistances.dump(out, "Iterations between abort and retry by the same thread");
+    }
+    if (locksPerIteration.getCount() != 0) {
+      locksPerIteration.dump(out, "Locks acquired per attempt");
+      undoLogLengths.dump(out, "Undo log length per attempt");
+    }
   }
 
   private Collection<Float> abortRatio(Collection<Integer> total) {
@@ -86,8 +105,13 @@ class IterationStatistics extends Statistics {
       abortRatio = CollectionMath.sumInteger(aborted.values()) / (float) total;
 
     printSummaryHeader(out, "Iterations");
-    out.printf("Committed: %d Total: %d Abort Ratio: %.4f\n", CollectionMath.sumInteger(committed.values()), total,
+    out.printf("Committed: %d Total: %d Abort Ratio: %.4f", CollectionMath.sumInteger(committed.values()), total,
         abortRatio);
+    if (iterationTimes.getCount() != 0) {
+      out.printf(" Time (ns) p50: %d p99: %d max: %d", iterationTimes.getQuantile(0.5), iterationTimes
+          .getQuantile(0.99), iterationTimes.getQuantile(1));
+    }
+    out.println();
   }
 
   public void putStats(Thread thread, int numCommitted, int numAborted) {
@@ -104,6 +128,17 @@ class IterationStatistics extends Statistics {
       aborted.put(thread, numAborted + n);
   }
 
+  /**
+   * Adds the histograms of one thread.
+   */
+  public void putHistograms(Histogram iterationTimes, Histogram retryDistances, Histogram locksPerIteration,
+      Histogram undoLogLengths) {
+    this.iterationTimes.merge(iterationTimes);
+    this.retryDistances.merge(retryDistances);
+    this.locksPerIteration.merge(locksPerIteration);
+    this.undoLogLengths.merge(undoLogLengths);
+  }
+
   public int getNumCommitted() {
     return CollectionMath.sumInteger(committed.values());
   }
@@ -125,5 +160,6 @@ class IterationStatistics extends Statistics {
     IterationStatistics other = (IterationStatistics) obj;
     mergeMap(aborted, other.aborted);
     mergeMap(committed, other.committed);
+    putHistograms(other.iterationTimes, other.retryDistances, other.locksPerIteration, other.undoLogLengths);
   }
 }
@@ -0,0 +1,464 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: KDGOrderedExecutor.java
+
+*/
+
+
+
+package galois.runtime;
+
+import galois.objects.Lockable;
+import galois.objects.MethodFlag;
+import galois.runtime.wl.OrderableWorklist;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import util.SystemProperties;
+import fn.Lambda;
+import fn.Lambda2Void;
+
+/**
+ * Non-speculative executor for ordered iterators in the style of the implicit kinetic
+ * dependence graph (IKDG). Work proceeds in rounds over a window of the highest priority
+ * items of the worklist:
+ * 
+ * <ol>
+ * <li>Inspect: every item of the window runs the user supplied neighborhood function,
+ * which must touch (acquire) every object the body will touch, but modify none. Each
+ * abstract lock ends up marked by the highest priority item whose neighborhood contains
+ * it.</li>
+ * <li>Execute: items that hold all the marks of their neighborhoods do not depend on any
+ * earlier pending item, so they run the body in parallel without conflicts, undo logs or
+ * rollback.</li>
+ * <li>Retire: commit actions of the executed items run in priority order, and the items
+ * that lost a mark go back to the worklist for a later round.</li>
+ * </ol>
+ * 
+ * The highest priority item of a window always executes, so every round makes progress.
+ * The window grows while most of it executes and shrinks when dependences are dense.
+ * 
+ * <p>
+ * The executor relies on two properties of the loop: the body only touches objects that
+ * the neighborhood function touched, and new items never have higher priority than the
+ * bound the caller gives for the item that created them. Items created in a round only
+ * reach the worklist when the window retires, so the window is cut before the first item
+ * with lower priority than the bound of some earlier item in it. Without a bound, an item
+ * may create one that comes right after it, and the window holds only items with the same
+ * priority as the first one. Touching an object outside the neighborhood during the
+ * execute phase is reported as an error.
+ * 
+ * @param <T>  type of worklist items
+ */
+class KDGOrderedExecutor<T> implements Executor {
+  private static final int WINDOW_PER_THREAD = SystemProperties.getIntProperty("kdgWindowPerThread", 4);
+  private static final int MAX_WINDOW = SystemProperties.getIntProperty("kdgMaxWindow", 1 << 14);
+
+  private final OrderableWorklist<T> worklist;
+  private final int numThreads;
+  private final List<Worker> workers;
+  private final Deque<Callback> suspendThunks;
+  private final Comparator<T> comp;
+  private final Comparator<KDGIteration<T>> windowComp;
+  private final AtomicInteger next;
+
+  private Lambda2Void<T, ForeachContext<T>> neighborhood;
+  private Lambda2Void<T, ForeachContext<T>> body;
+  private Lambda<T, T> earliestAdded;
+
+  private KDGIteration<T>[] window;
+  private int windowSize;
+  private int windowTarget;
+  private volatile boolean inspecting;
+  private volatile boolean finish;
+
+  public KDGOrderedExecutor(OrderableWorklist<T> worklist) {
+    this.worklist = worklist;
+    numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    workers = new ArrayList<Worker>();
+    for (int i = 0; i < numThreads; i++) {
+      workers.add(new Worker(i));
+    }
+    suspendThunks = new ArrayDeque<Callback>();
+    next = new AtomicInteger();
+
+    comp = worklist.getComparator();
+    windowComp = new Comparator<KDGIteration<T>>() {
+      @Override
+      public int compare(KDGIteration<T> it1, KDGIteration<T> it2) {
+        int r = comp.compare(it1.item, it2.item);
+        if (r != 0) {
+          return r;
+        }
+        // fall back to poll order
+        return it1.rank < it2.rank ? -1 : (it1.rank == it2.rank ? 0 : 1);
+      }
+    };
+
+    windowTarget = Math.min(MAX_WINDOW, Math.max(1, WINDOW_PER_THREAD * numThreads));
+    window = newWindow(windowTarget);
+  }
+
+  @SuppressWarnings("unchecked")
+  private KDGIteration<T>[] newWindow(int size) {
+    KDGIteration<T>[] retval = (KDGIteration<T>[]) new KDGIteration<?>[size];
+    int start = 0;
+    if (window != null) {
+      System.arraycopy(window, 0, retval, 0, window.length);
+      start = window.length;
+    }
+    for (int i = start; i < size; i++) {
+      retval[i] = new KDGIteration<T>(i);
+    }
+    return retval;
+  }
+
+  public IterationStatistics call(Lambda2Void<T, ForeachContext<T>> neighborhood,
+      Lambda2Void<T, ForeachContext<T>> body, Lambda<T, T> earliestAdded) throws ExecutionException {
+    this.neighborhood = neighborhood;
+    this.body = body;
+    this.earliestAdded = earliestAdded;
+
+    try {
+      while (!finish) {
+        int polled = fillWindow();
+        if (polled == 0) {
+          break;
+        }
+
+        inspecting = true;
+        runPhase();
+        inspecting = false;
+        runPhase();
+
+        int executed = retireWindow();
+        adaptWindow(polled, executed);
+
+        if (!suspendThunks.isEmpty()) {
+          GaloisRuntime.getRuntime().replaceWithRootContextAndCall(new Callback() {
+            @Override
+            public void call() {
+              for (Callback thunk : suspendThunks) {
+                thunk.call();
+              }
+            }
+          });
+          suspendThunks.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new ExecutionException(e);
+    }
+
+    IterationStatistics stats = new IterationStatistics();
+    for (Worker w : workers) {
+      stats.putStats(w.thread, w.numCommitted, w.numDeferred);
+    }
+    return stats;
+  }
+
+  private int fillWindow() {
+    Worker ctx = workers.get(0);
+    windowSize = 0;
+    T item;
+    while (windowSize < windowTarget && (item = worklist.poll(ctx)) != null) {
+      KDGIteration<T> it = window[windowSize];
+      it.item = item;
+      it.rank = windowSize;
+      it.safe = true;
+      windowSize++;
+    }
+
+    if (windowSize > 1) {
+      // concurrent adds may have slipped higher priority items in between polls
+      Arrays.sort(window, 0, windowSize, windowComp);
+      for (int i = 0; i < windowSize; i++) {
+        window[i].rank = i;
+      }
+    }
+
+    int polled = windowSize;
+    cutWindow();
+    return polled;
+  }
+
+  /**
+   * Returns to the worklist the items of the window that an earlier item of the window may
+   * create work in front of.
+   */
+  private void cutWindow() {
+    Worker ctx = workers.get(0);
+    T limit = null;
+    int cut = 0;
+    for (; cut < windowSize; cut++) {
+      T item = window[cut].item;
+      if (limit != null && comp.compare(item, limit) > 0) {
+        break;
+      }
+      T bound = earliestAdded == null ? item : earliestAdded.call(item);
+      if (limit == null || comp.compare(bound, limit) < 0) {
+        limit = bound;
+      }
+    }
+
+    for (int i = cut; i < windowSize; i++) {
+      worklist.add(window[i].item, ctx);
+      window[i].item = null;
+    }
+    windowSize = cut;
+  }
+
+  private void runPhase() throws InterruptedException, ExecutionException {
+    next.set(0);
+    GaloisRuntime.getRuntime().callAll(workers);
+  }
+
+  private int retireWindow() {
+    Worker ctx = workers.get(0);
+    int executed = 0;
+    for (int i = 0; i < windowSize; i++) {
+      KDGIteration<T> it = window[i];
+      if (it.safe) {
+        Iteration.setCurrentIteration(it);
+        it.performCommit(true);
+        Features.getReplayFeature().onCommit(it, it.getId(), it.item);
+        executed++;
+      } else {
+        it.clearLogs(true);
+        worklist.add(it.item, ctx);
+      }
+      it.releaseMarks();
+      it.item = null;
+    }
+    Iteration.setCurrentIteration(null);
+    return executed;
+  }
+
+  private void adaptWindow(int polled, int executed) {
+    if (executed * 10 >= polled * 9 && polled == windowTarget) {
+      int target = Math.min(MAX_WINDOW, windowTarget * 2);
+      if (target > window.length) {
+        window = newWindow(target);
+      }
+      windowTarget = target;
+    } else if (executed * 2 < polled) {
+      windowTarget = Math.max(numThreads, windowTarget / 2);
+    }
+  }
+
+  @Override
+  public void arbitrate(Iteration current, Iteration conflicter) throws IterationAbortException {
+    // KDGIteration.acquire resolves marks itself and never raises conflicts
+    throw new Error("Unexpected conflict in KDG executor");
+  }
+
+  @Override
+  public void onCommit(Iteration it, Callback action) {
+    it.addCommitAction(action);
+  }
+
+  @Override
+  public void onUndo(Iteration it, Callback action) {
+    // executed items never roll back
+  }
+
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
+  @Override
+  public void onRelease(Iteration it, ReleaseCallback action) {
+    it.addReleaseAction(action);
+  }
+
+  @Override
+  public boolean isSerial() {
+    return false;
+  }
+
+  @Override
+  public void suspend(Callback listener) {
+    throw new Error("Loops may not be nested in ordered loops with neighborhoods");
+  }
+
+  @Override
+  public void suspendDone() {
+    // only reachable after a successful suspend
+    throw new Error("KDG executor was never suspended");
+  }
+
+  private final LogAction addAction = new LogAction() {
+    @SuppressWarnings("unchecked")
+    @Override
+    public void call(Object item, Object ctx, Object unused0, int unused1) {
+      worklist.add((T) item, (ForeachContext<T>) ctx);
+    }
+  };
+
+  private class Worker implements Callable<Object>, ForeachContext<T> {
+    private final int id;
+    private Thread thread;
+    private KDGIteration<T> current;
+    private int numCommitted;
+    private int numDeferred;
+
+    public Worker(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public Object call() throws Exception {
+      thread = Thread.currentThread();
+      boolean inspect = inspecting;
+
+      int i;
+      while ((i = next.getAndIncrement()) < windowSize) {
+        KDGIteration<T> it = window[i];
+        current = it;
+        Iteration.setCurrentIteration(it);
+        if (inspect) {
+          it.inspecting = true;
+          neighborhood.call(it.item, this);
+          it.inspecting = false;
+          // the neighborhood function must not have effects
+          it.clearLogs(false);
+        } else if (it.safe) {
+          body.call(it.item, this);
+          numCommitted++;
+        } else {
+          numDeferred++;
+        }
+      }
+      current = null;
+      Iteration.setCurrentIteration(null);
+      return null;
+    }
+
+    @Override
+    public void add(T t) {
+      add(t, MethodFlag.ALL);
+    }
+
+    @Override
+    public void add(T t, byte flags) {
+      // new work becomes visible when the window retires
+      current.addCommitAction(addAction, t, this, null, 0);
+    }
+
+    @Override
+    public void finish() {
+      finish = true;
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+      synchronized (suspendThunks) {
+        suspendThunks.add(call);
+      }
+    }
+
+    @Override
+    public int getThreadId() {
+      return id;
+    }
+
+    @Override
+    public int getSocketId() {
+      return Topology.getSocket(id);
+    }
+
+    @Override
+    public int getIterationId() {
+      return current.getId();
+    }
+  }
+
+  /**
+   * Iteration whose abstract locks are priority marks. The lock owner is the highest
+   * priority item of the window that has touched the object so far.
+   */
+  private static final class KDGIteration<T> extends Iteration {
+    private final List<Lockable> marks;
+    private T item;
+    private int rank;
+    private volatile boolean safe;
+    private boolean inspecting;
+
+    public KDGIteration(int id) {
+      super(id);
+      marks = new ArrayList<Lockable>();
+    }
+
+    @Override
+    public void acquire(Lockable lockable) {
+      AtomicReference<Iteration> owner = lockable.getOwner();
+      if (inspecting) {
+        mark(owner, lockable);
+        return;
+      }
+
+      if (owner.get() != this) {
+        // a safe item holds the marks of its whole neighborhood
+        throw new Error("KDG body touched an object outside of its neighborhood: " + lockable);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mark(AtomicReference<Iteration> owner, Lockable lockable) {
+      while (true) {
+        Iteration o = owner.get();
+        if (o == this) {
+          return;
+        } else if (o == null) {
+          if (owner.compareAndSet(null, this)) {
+            marks.add(lockable);
+            return;
+          }
+        } else {
+          KDGIteration<T> other = (KDGIteration<T>) o;
+          if (other.rank < rank) {
+            // an earlier item depends on this object
+            safe = false;
+            return;
+          } else if (owner.compareAndSet(o, this)) {
+            other.safe = false;
+            marks.add(lockable);
+            return;
+          }
+        }
+      }
+    }
+
+    private void releaseMarks() {
+      for (int i = 0; i < marks.size(); i++) {
+        // marks may have been taken over by an earlier item
+        marks.get(i).getOwner().compareAndSet(this, null);
+      }
+      marks.clear();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: KarmaContentionManager.java
+
+*/
+
+
+
+package galois.runtime;
+
+import util.SystemProperties;
+
+/**
+ * Polka-style contention manager. The priority (<i>karma</i>) of an iteration is the
+ * number of abstract locks it has acquired, accumulated over the aborted attempts of
+ * its thread since its last commit (see {@link Iteration#getKarma()}).
+ * 
+ * <p>
+ * An iteration with lower priority than the lock owner aborts immediately. An
+ * iteration with higher priority backs off exponentially for as many rounds as the
+ * difference in karma (up to a bound), retrying as soon as the owner releases its
+ * locks, and aborts itself only if the owner is still holding its locks afterwards.
+ * </p>
+ * 
+ * Scherer, Scott. "Advanced Contention Management for Dynamic Software Transactional Memory." PODC 2005
+ *
+ */
+public class KarmaContentionManager extends ContentionManager {
+  private final int maxRounds;
+
+  public KarmaContentionManager() {
+    this.maxRounds = SystemProperties.getIntProperty("karmaMaxRounds", 8);
+  }
+
+  /**
+   * @param minBackoffNanos  initial backoff
+   * @param maxBackoffNanos  upper bound on the backoff
+   * @param maxRounds        maximum number of backoff rounds before aborting
+   */
+  public KarmaContentionManager(long minBackoffNanos, long maxBackoffNanos, int maxRounds) {
+    super(minBackoffNanos, maxBackoffNanos);
+    this.maxRounds = maxRounds;
+  }
+
+  @Override
+  public void resolve(Iteration current, Iteration conflicter) {
+    if (conflicter == null) {
+      return;
+    }
+
+    int mine = current.getKarma();
+    int theirs = conflicter.getKarma();
+    if (mine < theirs || (mine == theirs && !precedes(current, conflicter))) {
+      IterationAbortException.throwException();
+    }
+
+    int epoch = conflicter.getReleaseEpoch();
+    int rounds = Math.min(maxRounds, mine - theirs + 1);
+    for (int i = 1; i <= rounds; i++) {
+      backoff(randomBackoff(current, i));
+      if (conflicter.getReleaseEpoch() != epoch) {
+        return;
+      }
+    }
+
+    IterationAbortException.throwException();
+  }
+}
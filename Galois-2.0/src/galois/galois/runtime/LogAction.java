@@ -0,0 +1,44 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: LogAction.java
+
+*/
+
+
+
+package galois.runtime;
+
+/**
+ * Typed entry of an iteration's undo or commit log. Unlike a {@link Callback}, which
+ * captures its state in a freshly allocated closure, a log action is a stateless
+ * singleton (the opcode) and its state is passed as operands stored in preallocated
+ * slots of the log. Recording an action therefore does not allocate.
+ * 
+ * @see GaloisRuntime#onUndo(Iteration, LogAction, Object, Object, Object, int)
+ */
+public interface LogAction {
+  /**
+   * Performs the action.
+   * 
+   * @param arg0  first object operand
+   * @param arg1  second object operand
+   * @param arg2  third object operand
+   * @param arg3  integer operand
+   */
+  public void call(Object arg0, Object arg1, Object arg2, int arg3);
+}
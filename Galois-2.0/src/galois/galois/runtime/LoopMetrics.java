@@ -0,0 +1,178 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: LoopMetrics.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of the running loops, published as {@link LoopMetricsMXBean}.
+ * 
+ * <p>
+ * Counters are striped by thread id so that processes do not contend on them. Each
+ * stripe spans a cache line; reads sum over all stripes and are only approximately
+ * consistent with each other.
+ * </p>
+ *
+ */
+final class LoopMetrics implements LoopMetricsMXBean {
+  private static Logger logger = Logger.getLogger("galois.runtime.LoopMetrics");
+
+  static final int COMMITS = 0;
+  static final int ABORTS = 1;
+  static final int POLLS = 2;
+  static final int ADDS = 3;
+  static final int IDLE_NANOS = 4;
+  /**
+   * Longs per stripe, enough to keep stripes on different cache lines
+   */
+  private static final int STRIDE = 16;
+  private static final String NAME = "galois.runtime:type=LoopMetrics";
+
+  private static volatile LoopMetrics instance;
+
+  private final int numStripes;
+  private final AtomicLongArray counters;
+  private final AtomicLong loops;
+  private volatile int frameDepth;
+  private volatile String executor;
+
+  private LoopMetrics(int numStripes) {
+    this.numStripes = numStripes;
+    counters = new AtomicLongArray(numStripes * STRIDE);
+    loops = new AtomicLong();
+    executor = "none";
+  }
+
+  /**
+   * Starts collecting metrics for the given number of threads, replacing the
+   * metrics of a previous run.
+   * 
+   * @param numThreads  the number of threads
+   * @return            the new metrics
+   */
+  static LoopMetrics start(int numThreads) {
+    LoopMetrics metrics = new LoopMetrics(numThreads);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(metrics, name);
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Could not register " + NAME, e);
+    }
+    instance = metrics;
+    return metrics;
+  }
+
+  /**
+   * @return  the current metrics or null if metrics are disabled
+   */
+  static LoopMetrics getInstance() {
+    return instance;
+  }
+
+  int getNumThreads() {
+    return numStripes;
+  }
+
+  void add(int tid, int counter, long delta) {
+    counters.getAndAdd((tid % numStripes) * STRIDE + counter, delta);
+  }
+
+  void loopStarted() {
+    loops.incrementAndGet();
+  }
+
+  void setFrame(int depth, Executor executor) {
+    frameDepth = depth;
+    this.executor = depth == 0 ? "none" : executor.getClass().getSimpleName();
+  }
+
+  private long sum(int counter) {
+    long retval = 0;
+    for (int i = 0; i < numStripes; i++) {
+      retval += counters.get(i * STRIDE + counter);
+    }
+    return retval;
+  }
+
+  @Override
+  public long getCommits() {
+    return sum(COMMITS);
+  }
+
+  @Override
+  public long getAborts() {
+    return sum(ABORTS);
+  }
+
+  @Override
+  public double getAbortRatio() {
+    long aborts = getAborts();
+    long total = aborts + getCommits();
+    return total == 0 ? 0 : aborts / (double) total;
+  }
+
+  @Override
+  public long getWorklistPolls() {
+    return sum(POLLS);
+  }
+
+  @Override
+  public long getWorklistAdds() {
+    return sum(ADDS);
+  }
+
+  @Override
+  public long getIdleNanos() {
+    return sum(IDLE_NANOS);
+  }
+
+  @Override
+  public long getLoops() {
+    return loops.get();
+  }
+
+  @Override
+  public int getFrameDepth() {
+    return frameDepth;
+  }
+
+  @Override
+  public String getExecutor() {
+    return executor;
+  }
+}
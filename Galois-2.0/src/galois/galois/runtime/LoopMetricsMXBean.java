@@ -0,0 +1,80 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: LoopMetricsMXBean.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+/**
+ * Management interface of the live counters of the Galois runtime. Counters are
+ * totals since the runtime was started with metrics enabled (see {@link GaloisRuntime#main(String[])},
+ * option <code>-m</code>), so rates are obtained by sampling them periodically.
+ *
+ */
+public interface LoopMetricsMXBean {
+  /**
+   * @return  number of committed iterations
+   */
+  public long getCommits();
+
+  /**
+   * @return  number of aborted iterations
+   */
+  public long getAborts();
+
+  /**
+   * @return  fraction of iterations that aborted, between 0 and 1
+   */
+  public double getAbortRatio();
+
+  /**
+   * @return  number of elements taken from worklists
+   */
+  public long getWorklistPolls();
+
+  /**
+   * @return  number of elements added to worklists by iterations
+   */
+  public long getWorklistAdds();
+
+  /**
+   * @return  total time processes spent waiting for work or backing off, in nanoseconds
+   */
+  public long getIdleNanos();
+
+  /**
+   * @return  number of parallel loops started
+   */
+  public long getLoops();
+
+  /**
+   * @return  number of nested executors currently running, 0 outside of loops
+   */
+  public int getFrameDepth();
+
+  /**
+   * @return  name of the innermost running executor
+   */
+  public String getExecutor();
+}
@@ -0,0 +1,121 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: LoopMetricsSampler.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.PrintStream;
+
+import util.Sampler;
+import util.Statistics;
+
+/**
+ * Periodically prints the rates of the {@link LoopMetrics} counters, one line per sample,
+ * so that a long running job can be watched (e.g., to see whether it is still draining
+ * its worklists or mostly aborting). The property <code>metricsFormat</code> selects
+ * between <code>text</code> (default) and <code>json</code> lines.
+ *
+ */
+class LoopMetricsSampler extends Sampler {
+  private static final boolean JSON = "json".equals(System.getProperty("metricsFormat", "text"));
+
+  private final LoopMetrics metrics;
+  private final PrintStream out;
+  private final long startTime;
+  private long lastTime;
+  private long lastCommits;
+  private long lastAborts;
+  private long lastPolls;
+  private long lastAdds;
+  private long lastIdle;
+
+  private LoopMetricsSampler(int intervalMillis, LoopMetrics metrics, PrintStream out) {
+    super(intervalMillis);
+    this.metrics = metrics;
+    this.out = out;
+    startTime = System.nanoTime();
+    lastTime = startTime;
+  }
+
+  @Override
+  protected void sample() {
+    long now = System.nanoTime();
+    long commits = metrics.getCommits();
+    long aborts = metrics.getAborts();
+    long polls = metrics.getWorklistPolls();
+    long adds = metrics.getWorklistAdds();
+    long idle = metrics.getIdleNanos();
+
+    double seconds = (now - lastTime) / 1e9;
+    double commitRate = (commits - lastCommits) / seconds;
+    double abortRate = (aborts - lastAborts) / seconds;
+    double pollRate = (polls - lastPolls) / seconds;
+    double addRate = (adds - lastAdds) / seconds;
+    // aborted elements go back to the worklist
+    double drainRate = pollRate - abortRate - addRate;
+    double idleFraction = (idle - lastIdle) / ((double) (now - lastTime) * metrics.getNumThreads());
+    long attempts = commits - lastCommits + aborts - lastAborts;
+    double abortRatio = attempts == 0 ? 0 : (aborts - lastAborts) / (double) attempts;
+    double time = (now - startTime) / 1e9;
+
+    if (JSON) {
+      out.printf("{\"time\": %.3f, \"executor\": \"%s\", \"depth\": %d, \"loops\": %d, "
+          + "\"commits\": %d, \"commitsPerSec\": %.1f, \"aborts\": %d, \"abortsPerSec\": %.1f, "
+          + "\"abortRatio\": %.4f, \"pollsPerSec\": %.1f, \"addsPerSec\": %.1f, \"drainPerSec\": %.1f, "
+          + "\"idle\": %.4f}\n", time, metrics.getExecutor(), metrics.getFrameDepth(), metrics.getLoops(), commits,
+          commitRate, aborts, abortRate, abortRatio, pollRate, addRate, drainRate, idleFraction);
+    } else {
+      out.printf("Metrics: %.1f s %s depth: %d commits/s: %.0f aborts/s: %.0f (%.1f%%) polls/s: %.0f "
+          + "adds/s: %.0f drain/s: %.0f idle: %.1f%%\n", time, metrics.getExecutor(), metrics.getFrameDepth(),
+          commitRate, abortRate, abortRatio * 100, pollRate, addRate, drainRate, idleFraction * 100);
+    }
+
+    lastTime = now;
+    lastCommits = commits;
+    lastAborts = aborts;
+    lastPolls = polls;
+    lastAdds = adds;
+    lastIdle = idle;
+  }
+
+  /**
+   * Samples are printed as they are taken, so there are no accumulated statistics.
+   */
+  @Override
+  protected Statistics dumpSamples() {
+    return null;
+  }
+
+  /**
+   * Start sampling the given metrics.
+   * 
+   * @param interval  sample interval in milliseconds, 0 to only publish the metrics through JMX
+   * @param metrics   the metrics to sample
+   * @return          a sampler
+   */
+  public static Sampler start(int interval, LoopMetrics metrics) {
+    return start(new LoopMetricsSampler(interval, metrics, System.err));
+  }
+}
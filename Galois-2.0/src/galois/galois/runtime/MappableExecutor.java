@@ -38,6 +38,13 @@ class MappableExecutor<T> extends UnorderedExecutor<Object> {
   private Object body;
   private Lambda2Void<Object, ForeachContext<Object>> dummyBody;
 
+  /**
+   * Processes can't leave a mappable half way, so they suspend between iterations
+   * and lend their threads to the inner executor while suspended
+   */
+  private volatile Callback suspendListener;
+  private int numFinished;
+
   public MappableExecutor(Mappable<T> mappable) {
     this.mappable = mappable;
   }
@@ -55,11 +62,28 @@ class MappableExecutor<T> extends UnorderedExecutor<Object> {
 
   public IterationStatistics call(Object body, MappableType type, Object... args) throws ExecutionException {
     initialize(body, type, args);
+    numFinished = 0;
     IterationStatistics stats = call(dummyBody, new DummyWorklist(numThreads));
     mappable.mapInternalDone();
     return stats;
   }
 
+  @Override
+  public void suspend(Callback listener) {
+    synchronized (this) {
+      suspendListener = listener;
+      // finished processes are trivially suspended
+      for (int i = 0; i < numFinished; i++) {
+        listener.call();
+      }
+    }
+  }
+
+  @Override
+  public void suspendDone() {
+    suspendListener = null;
+  }
+
   private class MyProcess extends GaloisProcess implements MapInternalContext {
     public MyProcess(int id) {
       super(id);
@@ -69,8 +93,19 @@ class MappableExecutor<T> extends UnorderedExecutor<Object> {
     protected void doCall() throws Exception {
       try {
         type.call(mappable, body, this, args);
+        releaseCoalescedLocks();
       } finally {
         Iteration.setCurrentIteration(null);
+        Callback listener;
+        synchronized (MappableExecutor.this) {
+          numFinished++;
+          listener = suspendListener;
+        }
+        // call outside of the monitor, the suspending thread holds the listener's lock
+        // while it calls suspend()
+        if (listener != null) {
+          listener.call();
+        }
       }
     }
 
@@ -81,7 +116,13 @@ class MappableExecutor<T> extends UnorderedExecutor<Object> {
 
     @Override
     public void begin() {
+      if (suspendListener != null) {
+        // the inner loop may need the locks kept by lock coalescing
+        releaseCoalescedLocks();
+        GaloisRuntime.getRuntime().suspendAndHelp();
+      }
       setupCurrentIteration();
+      startIteration(null);
     }
 
     @Override
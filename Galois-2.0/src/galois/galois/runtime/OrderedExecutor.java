@@ -24,18 +24,28 @@ import galois.runtime.OrderedIteration.Status;
 import galois.runtime.wl.OrderableWorklist;
 
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.PriorityQueue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
   private final static boolean fineLogLevel = logger.isLoggable(Level.FINE);
 
   private static final int GET_FREE_ITER_ATTEMPTS = 10;
+  private static final long FREE_ITER_PARK_NANOS = 10000;
+
+  /**
+   * marks a scheduling slot whose thread has started polling the worklist but has
+   * not yet published the item it got
+   */
+  private static final Object POLLING = new Object();
 
   /**
    * comparator used to order worklist
@@ -44,26 +54,42 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
 
   private final OrderableWorklist<T> worklist;
   /**
-   * cannot use an ordered set like java.util.TreeSet, because it does not allow adding different 
-   * items of same priority. Although ROBComparator breaks ties based on hashCode, two different
-   * iterations can have same hashCode and the same priority, because the hashCode is not guaranteed
-   * to be unique
+   * The reorder buffer. An ordered set works here because ROBComparator breaks ties between
+   * iterations with same priority active elements using the iteration id, which is unique
+   * among the iterations of this executor. An iteration's active element does not change
+   * while the iteration is in the rob, so its position in the set is stable.
    */
-  private final PriorityQueue<OrderedIteration<T>> rob;
+  private final ConcurrentSkipListSet<OrderedIteration<T>> rob;
   private final ROBComparator<T> robComp;
-  private final ReentrantLock robLock;
 
-  private ArrayBlockingQueue<OrderedIteration<T>> freeList;
+  /**
+   * Per thread slot holding the item a thread is moving from the worklist to the rob. Together
+   * with the worklist head, these slots form the watermark below which no iteration can be
+   * retired. Without them, an item in transit would be invisible to clearROB().
+   */
+  private final AtomicReferenceArray<Object> scheduling;
+
+  /**
+   * Only one thread retires iterations from the head of the rob at a time. Other threads
+   * record a request and leave instead of waiting; the retiring thread rechecks the rob
+   * before giving up ownership.
+   */
+  private final AtomicBoolean clearing;
+  private final AtomicInteger clearRequests;
+
+  private final ConcurrentLinkedQueue<OrderedIteration<T>> freeList;
 
   public OrderedExecutor(OrderableWorklist<T> worklist) {
     this.worklist = worklist;
 
     comp = worklist.getComparator();
     robComp = new ROBComparator<T>(comp);
-    rob = new PriorityQueue<OrderedIteration<T>>(64, robComp);
-    robLock = new ReentrantLock();
+    rob = new ConcurrentSkipListSet<OrderedIteration<T>>(robComp);
+    scheduling = new AtomicReferenceArray<Object>(numThreads);
+    clearing = new AtomicBoolean();
+    clearRequests = new AtomicInteger();
 
-    freeList = new ArrayBlockingQueue<OrderedIteration<T>>(getMaxIterations());
+    freeList = new ConcurrentLinkedQueue<OrderedIteration<T>>();
     for (int i = 0; i < getMaxIterations(); ++i) {
       freeList.add(new OrderedIteration<T>(i));
     }
@@ -106,7 +132,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
     log("aborting %s with object %s", it, it.getIterationObject());
 
     it.performAbort();
-    clearROB(it);
+    clearROB();
 
   }
 
@@ -231,63 +257,90 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
     abortIteration(it);
   }
 
-  private int clearROB(OrderedIteration<T> debugIt) {
+  private int clearROB() {
     int retval = 0;
 
-    robLock.lock();
-    try {
-      int niter = 0;
-      while (!rob.isEmpty()) {
+    // see removeAbortDone() for the other owner of clearing
+
+    clearRequests.incrementAndGet();
+    while (clearing.compareAndSet(false, true)) {
+      int requests;
+      long start = Trace.ENABLED ? System.nanoTime() : 0;
+      try {
+        requests = clearRequests.get();
+        retval += retireROBHead();
+      } finally {
+        clearing.set(false);
+        if (Trace.ENABLED) {
+          Trace.record(Trace.CLEAR_ROB, start);
+        }
+      }
+      if (clearRequests.get() == requests) {
+        // no thread asked for a clean up while we were retiring iterations
+        break;
+      }
+    }
+    return retval;
+  }
 
-        // robHead can be in SCHEDULED, READY_TO_COMMIT, ABORTING, ABORT_SELF, ABORT_DONE
-        // but it is hard to see a consistent value, since the status may change concurrently
-        OrderedIteration<T> robHead = rob.peek();
+  // should only be called by the thread that owns clearing
+  private int retireROBHead() {
+    int retval = 0;
+    int niter = 0;
+    OrderedIteration<T> robHead;
+    while ((robHead = firstInROB()) != null) {
+      // robHead can be in SCHEDULED, READY_TO_COMMIT, ABORTING, ABORT_SELF, ABORT_DONE
+      // but it is hard to see a consistent value, since the status may change concurrently
 
-        log("%d cleaning: looking at: %s ", niter, robHead);
+      log("%d cleaning: looking at: %s ", niter, robHead);
 
-        ++niter;
+      ++niter;
 
-        if (robHead.hasStatus(Status.COMMIT_DONE) || robHead.hasStatus(Status.UNSCHEDULED)) {
-          // an iteration cannot be in the rob in these two states
-          throw new RuntimeException("Iteration " + robHead + " has bad status in ROB ");
-        }
+      if (robHead.hasStatus(Status.COMMIT_DONE) || robHead.hasStatus(Status.UNSCHEDULED)) {
+        // an iteration cannot be in the rob in these two states
+        throw new RuntimeException("Iteration " + robHead + " has bad status in ROB ");
+      }
 
-        if (!robHead.hasStatus(Status.READY_TO_COMMIT) && !robHead.hasStatus(Status.ABORT_DONE)) {
-          // robHead not ready to be removed from the rob
-          break;
-        }
+      if (!robHead.hasStatus(Status.READY_TO_COMMIT) && !robHead.hasStatus(Status.ABORT_DONE)) {
+        // robHead not ready to be removed from the rob
+        break;
+      }
 
-        if (!isOfHighestPriority(robHead)) {
-          log("clearRob: iteration %s does not have highest priority", robHead);
-          break;
-        }
+      if (!isOfHighestPriority(robHead)) {
+        log("clearRob: iteration %s does not have highest priority", robHead);
+        break;
+      }
 
-        log("clearRob: iteration %s has highest priority", robHead);
+      log("clearRob: iteration %s has highest priority", robHead);
 
-        if (robHead.casStatus(Status.READY_TO_COMMIT, Status.COMMITTING)) {
-          // imp to use CAS here, since another thread might be trying 
-          // to set status to ABORTING in arbitrate(). Therefore using a CAS to
-          // resolve the race
+      if (robHead.casStatus(Status.READY_TO_COMMIT, Status.COMMITTING)) {
+        // imp to use CAS here, since another thread might be trying 
+        // to set status to ABORTING in arbitrate(). Therefore using a CAS to
+        // resolve the race
 
-          retval += robHead.performCommit(true);
-          // poll() should remove the same object that was returned by peek() i.e. robHead
-          rob.poll();
+        retval += robHead.performCommit(true);
+        rob.remove(robHead);
 
-          log("done with committing %s", robHead);
-          addToFreeList(robHead);
+        log("done with committing %s", robHead);
+        addToFreeList(robHead);
 
-        } else if (robHead.hasStatus(Status.ABORT_DONE)) {
-          rob.poll();
-          log("removing A_DONE %s from ROB", robHead);
-          addToFreeList(robHead);
-        } else {
-          break;
-          // can't freeze the status at one point, since it could be changing concurrently
-        }
+      } else if (robHead.hasStatus(Status.ABORT_DONE)) {
+        rob.remove(robHead);
+        log("removing A_DONE %s from ROB", robHead);
+        addToFreeList(robHead);
+      } else {
+        break;
+        // can't freeze the status at one point, since it could be changing concurrently
       }
-      return retval;
-    } finally {
-      robLock.unlock();
+    }
+    return retval;
+  }
+
+  private OrderedIteration<T> firstInROB() {
+    try {
+      return rob.first();
+    } catch (NoSuchElementException e) {
+      return null;
     }
   }
 
@@ -336,7 +389,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
       log("Setting status of %s from SCHEDULED to RTC", it);
       // at this point, there's hope iteration may eventually commit
 
-      clearROB(it);
+      clearROB();
 
     } else if (it.hasStatus(Status.ABORT_SELF)) {
       log("Setting status of %s from A_SELF to ABORTING", it);
@@ -348,7 +401,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
       // need to add back the iteration to freeList
       addToFreeList(it);
 
-      clearROB(it);
+      clearROB();
     } else {
       // can't let an iteration fall through commitIteration
       // either it should clearForCommit
@@ -368,9 +421,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
    * 
    * Precondition 1: 'current' is the iteration currently ran by the executing thread
    * Precondition 2: Ran with conflict management disabled 
-   * NOTE: Currently we do not try to acquire the ROB lock before we compare the priorities of current and
-   * conflicter. This relies on the fact that iterationObject is not set to null. If this ever happens, we
-   * also need to acquire the lock here too. 
+   * NOTE: This relies on the fact that iterationObject is not set to null when an iteration is recycled.
    */
   private int compareIterationPriorities(OrderedIteration<T> current, OrderedIteration<T> conflicter) {
     // if the priority of the current iteration is higher, then abort the other
@@ -381,39 +432,56 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
   @Override
   protected T poll(ForeachContext<T> ctx) {
     OrderedIteration<T> it = (OrderedIteration<T>) Iteration.getCurrentIteration();
-    T obj = null;
+    int tid = ctx.getThreadId();
+
+    // publish that an item is in transit before it leaves the worklist
+    scheduling.set(tid, POLLING);
+    T obj = worklist.poll(ctx);
+    if (obj == null) {
+      scheduling.set(tid, null);
+      return null;
+    }
+    scheduling.set(tid, obj);
 
-    robLock.lock();
-    try {
-      obj = worklist.poll(ctx);
-      if (obj == null) {
-        return null;
-      }
-      assert it.hasStatus(Status.UNSCHEDULED) : String.format("Unwanted status of iter in poll() %s\n", it);
-      it.setStatus(Status.SCHEDULED);
-      it.setIterationObject(obj);
+    assert it.hasStatus(Status.UNSCHEDULED) : String.format("Unwanted status of iter in poll() %s\n", it);
+    it.setStatus(Status.SCHEDULED);
+    it.setIterationObject(obj);
 
-      rob.add(it);
+    rob.add(it);
+    scheduling.set(tid, null);
 
-      log("scheduling %s with object %s", it, obj);
-    } finally {
-      robLock.unlock();
-    }
+    log("scheduling %s with object %s", it, obj);
     return obj;
   }
 
+  // Checks that nothing in the worklist or in transit to the rob precedes it. The
+  // rob head is re-read at the end, because an item that was in transit during the
+  // scan may have reached the rob and become its new head.
+  @SuppressWarnings("unchecked")
   private boolean isOfHighestPriority(OrderedIteration<T> it) {
+    T itObj = it.getIterationObject();
     T currentTopObj = worklist.peek();
-    if (currentTopObj == null) {
-      return true;
+    if (currentTopObj != null) {
+      // Here we can't use the robComparator because the queue object is not owned yet. Hard-coding
+      boolean res = comp.compare(itObj, currentTopObj) <= 0;
+
+      log("Result of comparing %s with %s is %s", itObj, currentTopObj, res);
+
+      if (!res) {
+        return false;
+      }
     }
-    T itObj = it.getIterationObject();
-    // Here we can't use the robComparator because the queue object is not owned yet. Hard-coding
-    boolean res = comp.compare(itObj, currentTopObj) <= 0;
 
-    log("Result of comparing %s with %s is %s", itObj, currentTopObj, res);
+    for (int i = 0; i < numThreads; i++) {
+      Object inTransit = scheduling.get(i);
+      if (inTransit == POLLING) {
+        return false;
+      } else if (inTransit != null && comp.compare(itObj, (T) inTransit) > 0) {
+        return false;
+      }
+    }
 
-    return res;
+    return firstInROB() == it;
   }
 
   // we remvove from the freeList
@@ -432,7 +500,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
     while (retIt == null) { // normally should fail
 
       // try to clear the head of the ROB.
-      clearROB(retIt);
+      clearROB();
 
       if (attempts >= GET_FREE_ITER_ATTEMPTS) {
         retIt = removeAbortDone();
@@ -442,12 +510,8 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
           retIt.recycle();
           break;
         } else {
-          try {
-            retIt = freeList.take();
-            break; // don't drop down, watch out for the poll()
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
+          // wait for some other thread to retire an iteration
+          LockSupport.parkNanos(FREE_ITER_PARK_NANOS);
         }
       }
 
@@ -464,32 +528,31 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
   // tries to find one ABORT_DONE iteration in the rob and removes it from
   // the rob. removing an ABORT_DONE iteration is safest, since item it was processing
   // is back in the worklist, all actions have been completed and locks have been released.
+  // Only the thread that owns clearing removes iterations from the rob. Otherwise, an
+  // iteration could be retired, recycled and scheduled again between finding it and
+  // removing it here.
   private OrderedIteration<T> removeAbortDone() {
-    robLock.lock();
+    if (!clearing.compareAndSet(false, true)) {
+      return null;
+    }
     try {
-      for (Iterator<OrderedIteration<T>> i = rob.iterator(); i.hasNext();) {
-        OrderedIteration<T> it = i.next();
+      for (OrderedIteration<T> it : rob) {
         if (it.hasStatus(Status.ABORT_DONE)) {
-          i.remove();
+          rob.remove(it);
           return it;
         }
       }
       return null; // couldn't find an ABORT_DONE iteration.
     } finally {
-      robLock.unlock();
+      clearing.set(false);
+      // serve requests that came in while we owned clearing
+      clearROB();
     }
-
   }
 
   @Override
   protected boolean allIterRetired() {
-    robLock.lock();
-    try {
-      // System.err.println(">>>>>> num commits = " + commits + ", rob = " + rob);
-      return rob.isEmpty();
-    } finally {
-      robLock.unlock();
-    }
+    return rob.isEmpty();
   }
 
   private static class ROBComparator<U> implements Comparator<OrderedIteration<U>> {
@@ -502,10 +565,9 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
     // The comparison uses the worklist comparator to compare the 
     // priority of active elements owned by the iterations.
     //
-    // Ties are broken based on hashCode(), which provides a consistent
-    // way to arbitrate between two conflicting iterations.
-    // two different Iterations can have the same hashCode and same priority
-    // active elements, in which case the comparison may return 0.
+    // Ties are broken based on the iteration id, which provides a consistent
+    // way to arbitrate between two conflicting iterations. Iteration ids are
+    // unique within an executor, so the comparison only returns 0 for it1 == it2.
     @Override
     public int compare(OrderedIteration<U> it1, OrderedIteration<U> it2) {
       if (it1 == it2) { // It is needed for the set containment
@@ -517,7 +579,7 @@ class OrderedExecutor<T> extends AbstractGaloisExecutor<T> {
       int objCmpRes = comp.compare(it1Obj, it2Obj);
 
       if (objCmpRes == 0) {
-        return it1.hashCode() - it2.hashCode();
+        return it1.getId() < it2.getId() ? -1 : (it1.getId() == it2.getId() ? 0 : 1);
       }
       return objCmpRes;
     }
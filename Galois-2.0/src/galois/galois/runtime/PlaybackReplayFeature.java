@@ -29,18 +29,26 @@ import fn.LambdaVoid;
 import galois.objects.Mappable;
 import galois.objects.MethodFlag;
 import galois.runtime.wl.Worklist;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.GZIPInputStream;
 
+/**
+ * Replays a recorded execution. Without <code>-s</code> (i.e., with <code>--dpp</code>), the
+ * iterations between two recorded callbacks are replayed in parallel by an ordered executor
+ * that commits them in recorded order. An iteration additionally waits for the item it
+ * polled to be added and for the previous recorded iteration with the same iteration id, whose
+ * replay ids it continues; conflicts between other iterations are resolved by speculation.
+ * 
+ *
+ */
 class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, ForeachContext<T> {
   private final TLongObjectHashMap<CallbackType> callbackTypes;
   private final TLongObjectHashMap<Object> callbacks;
@@ -51,6 +59,7 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
   private int cur;
   private int curLog;
   private int iterationId;
+  private boolean parallel;
 
   public PlaybackReplayFeature(int maxIterations) {
     super(maxIterations);
@@ -75,6 +84,10 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
     // throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
   @Override
   public boolean isSerial() {
     return true;
@@ -130,6 +143,11 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
       Object... args) throws ExecutionException {
     nextLog();
 
+    parallel = !GaloisRuntime.getRuntime().useSerial();
+    if (parallel) {
+      return runParallel(body, mappableBody, type, args);
+    }
+
     int numCommitted = 0;
     T item;
     while ((item = poll()) != null) {
@@ -157,6 +175,181 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
     return stats;
   }
 
+  private IterationStatistics runParallel(Lambda2Void<T, ForeachContext<T>> body, Object mappableBody,
+      MappableType type, Object... args) throws ExecutionException {
+    IterationStatistics stats = new IterationStatistics();
+    List<Entry> batch = new ArrayList<Entry>();
+    TIntObjectHashMap<Entry> lastEntries = new TIntObjectHashMap<Entry>();
+    int position = 0;
+
+    while (true) {
+      for (; cur < log.size(); cur++) {
+        switch (log.getAction(cur)) {
+        case POLL:
+          int id = log.getIterationId(cur);
+          Entry entry = new Entry(position++, log.getRid(cur), id, lastEntries.get(id));
+          lastEntries.put(id, entry);
+          batch.add(entry);
+          break;
+        case CALLBACK:
+          replay(batch, body, mappableBody, type, args, stats);
+          lastEntries.clear();
+          callCallback(log.getRid(cur), this);
+          break;
+        default:
+          throw new Error();
+        }
+      }
+
+      // Batches end at the end of a log so that they stay bounded
+      replay(batch, body, mappableBody, type, args, stats);
+      lastEntries.clear();
+      if (cur == log.getCapacity()) {
+        nextLog();
+      } else {
+        // End of this executor
+        break;
+      }
+    }
+
+    reset();
+    parallel = false;
+    return stats;
+  }
+
+  private void replay(List<Entry> batch, final Lambda2Void<T, ForeachContext<T>> body, final Object mappableBody,
+      final MappableType type, final Object[] args, IterationStatistics stats) throws ExecutionException {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    stats.merge(GaloisRuntime.getRuntime().callOrdered(batch, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry o1, Entry o2) {
+        return o1.position - o2.position;
+      }
+    }, new Lambda2Void<Entry, ForeachContext<Entry>>() {
+      @Override
+      public void call(final Entry entry, ForeachContext<Entry> ctx) {
+        if (entry.previous != null && !entry.previous.committed) {
+          // Need the replay ids made by the previous iteration with this id
+          IterationAbortException.throwException();
+        }
+
+        final T item;
+        synchronized (map) {
+          item = map.tryPoll(entry.rid);
+        }
+        if (item == null) {
+          // Iteration that adds the item has not committed yet
+          IterationAbortException.throwException();
+        }
+
+        Iteration it = Iteration.getCurrentIteration();
+        it.addUndoAction(new Callback() {
+          @Override
+          public void call() {
+            synchronized (map) {
+              map.update(entry.rid, item);
+            }
+          }
+        });
+
+        ParallelContext pctx = new ParallelContext(entry, ctx);
+        if (body != null)
+          body.call(item, pctx);
+        else
+          type.call(mappableBody, item, args);
+
+        // Registered last so that commit actions run in order and the replay id
+        // counters of this iteration id are reset before the next entry sees the flag
+        it.addCommitAction(new Callback() {
+          @Override
+          public void call() {
+            entry.committed = true;
+          }
+        });
+      }
+    }));
+    batch.clear();
+  }
+
+  /**
+   * A recorded iteration
+   */
+  private static class Entry {
+    final int position;
+    final long rid;
+    final int iterationId;
+    /**
+     * previous entry in the batch with the same iteration id
+     */
+    final Entry previous;
+    volatile boolean committed;
+
+    Entry(int position, long rid, int iterationId, Entry previous) {
+      this.position = position;
+      this.rid = rid;
+      this.iterationId = iterationId;
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * Context given to the loop body during parallel playback. Added items become
+   * visible when the iteration commits.
+   */
+  private class ParallelContext implements ForeachContext<T> {
+    private final Entry entry;
+    private final ForeachContext<Entry> ctx;
+
+    public ParallelContext(Entry entry, ForeachContext<Entry> ctx) {
+      this.entry = entry;
+      this.ctx = ctx;
+    }
+
+    @Override
+    public void add(T item) {
+      add(item, MethodFlag.ALL);
+    }
+
+    @Override
+    public void add(final T item, byte flags) {
+      final long rid = getRid(item);
+      Iteration.getCurrentIteration().addCommitAction(new Callback() {
+        @Override
+        public void call() {
+          synchronized (map) {
+            map.update(rid, item);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void finish() {
+    }
+
+    @Override
+    public void suspendWith(Callback call) {
+    }
+
+    @Override
+    public int getThreadId() {
+      return ctx.getThreadId();
+    }
+
+    @Override
+    public int getSocketId() {
+      return ctx.getSocketId();
+    }
+
+    @Override
+    public int getIterationId() {
+      return entry.iterationId;
+    }
+  }
+
   @Override
   public void finish() {
   }
@@ -190,10 +383,17 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
     return 0;
   }
 
+  @Override
+  public int getSocketId() {
+    return 0;
+  }
+
   @Override
   public void onCommit(Iteration it, int iterationId, Object item) {
     checkValidity();
-    throw new UnsupportedOperationException();
+    // The ordered executor replaying in parallel reports commits, which are already in the log
+    if (!parallel)
+      throw new UnsupportedOperationException();
   }
 
   @Override
@@ -208,19 +408,9 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
   }
 
   private void nextLog() {
-    try {
-      ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new FileInputStream(getLogName(curLog))));
-      log = (Log) in.readObject();
-      cur = 0;
-      in.close();
-      curLog++;
-    } catch (FileNotFoundException e) {
-      throw new Error(e);
-    } catch (IOException e) {
-      throw new Error(e);
-    } catch (ClassNotFoundException e) {
-      throw new Error(e);
-    }
+    log = ReplayLogStore.read(getLogName(curLog));
+    cur = 0;
+    curLog++;
   }
 
   private T poll() throws ExecutionException {
@@ -257,6 +447,10 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
     checkValidity();
     if (GaloisRuntime.getRuntime().inRoot()) {
       setNextRid(item);
+    } else if (parallel) {
+      Iteration it = Iteration.getCurrentIteration();
+      Entry entry = (Entry) ((OrderedIteration<?>) it).getIterationObject();
+      setNextRid(it, entry.iterationId, item);
     } else {
       setNextRid(null, iterationId, item);
     }
@@ -267,6 +461,11 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
 
     public T poll(long rid);
 
+    /**
+     * Like {@link #poll(long)} but returns null if there is no item with the given rid.
+     */
+    public T tryPoll(long rid);
+
     public void clear();
   }
 
@@ -305,6 +504,14 @@ class PlaybackReplayFeature<T> extends ReplayFeature implements Executor, Foreac
       return retval;
     }
 
+    @Override
+    public T tryPoll(long rid) {
+      if (!counts.containsKey(rid)) {
+        return null;
+      }
+      return poll(rid);
+    }
+
     @Override
     public void clear() {
       map.clear();
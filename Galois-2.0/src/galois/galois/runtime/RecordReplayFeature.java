@@ -24,63 +24,86 @@ kind.
 
 package galois.runtime;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.GZIPOutputStream;
 
 import fn.LambdaVoid;
 import galois.runtime.ReplayFeature.Log.Action;
 
+/**
+ * Records the order of committed iterations and callbacks. Committing threads
+ * put fixed-width entries directly into a memory-mapped log; full logs are
+ * sealed in the background by a {@link ReplayLogStore}, so a committer only
+ * waits for a new log file to be mapped.
+ * 
+ *
+ */
 class RecordReplayFeature extends ReplayFeature {
   private static final int LOG_SIZE = 1024 * 1024;
 
-  private final AtomicInteger cur;
+  /**
+   * number of the current log in the upper and index of the next entry in the lower
+   * 32 bits. An index of LOG_SIZE means the next entry needs a new log, a greater index
+   * that the log is being rotated.
+   */
+  private final AtomicLong cur;
   private final ReentrantLock lock;
   private final Condition cond;
-  private Log log;
+  private final ReplayLogStore store;
+  /**
+   * current segment, null if no entry has been put since the last loop finished
+   */
+  private ReplayLogStore.Segment segment;
   private int curLog;
 
   public RecordReplayFeature(int maxIterations) {
     super(maxIterations);
     lock = new ReentrantLock();
     cond = lock.newCondition();
-    cur = new AtomicInteger();
-    log = new Log(LOG_SIZE);
+    store = new ReplayLogStore();
+    // First entry opens a log
+    cur = new AtomicLong(LOG_SIZE);
   }
 
-  private int getIndex() {
-    boolean makeLog;
-    int retval;
-    do {
-      makeLog = false;
-      retval = cur.get();
-      if (retval == LOG_SIZE)
-        makeLog = true;
-      else if (retval > LOG_SIZE) {
+  private static int getIndex(long c) {
+    return (int) c;
+  }
+
+  private void putEntry(Action action, long rid, int iterationId) {
+    while (true) {
+      long c = cur.get();
+      int index = getIndex(c);
+      if (index > LOG_SIZE) {
         waitForRotate();
         continue;
       }
-    } while (!cur.compareAndSet(retval, retval + 1));
+      // Read after cur: if the log changes before the CAS, the CAS fails because the
+      // log number is part of cur
+      ReplayLogStore.Segment s = segment;
+      if (!cur.compareAndSet(c, c + 1)) {
+        continue;
+      }
 
-    if (makeLog) {
-      rotate();
-      return 0;
+      if (index == LOG_SIZE) {
+        s = rotate();
+        index = 0;
+      }
+      s.log.putEntry(index, action, rid, iterationId);
+      return;
     }
-
-    return retval;
   }
 
-  private void rotate() {
+  private ReplayLogStore.Segment rotate() {
     lock.lock();
     try {
-      rotateLog();
-      cur.set(1);
+      if (segment != null) {
+        store.seal(segment, LOG_SIZE);
+      }
+      segment = nextSegment();
+      cur.set(((long) curLog << 32) | 1);
       cond.signalAll();
+      return segment;
     } finally {
       lock.unlock();
     }
@@ -89,7 +112,7 @@ class RecordReplayFeature extends ReplayFeature {
   private void waitForRotate() {
     lock.lock();
     try {
-      while (cur.get() > LOG_SIZE) {
+      while (getIndex(cur.get()) > LOG_SIZE) {
         cond.await();
       }
     } catch (InterruptedException e) {
@@ -99,36 +122,19 @@ class RecordReplayFeature extends ReplayFeature {
     }
   }
 
-  private void rotateLog() {
-    try {
-      ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(getLogName(curLog))));
-      out.writeObject(log);
-      out.close();
-
-      log = new Log(LOG_SIZE);
-      curLog++;
-      cur.set(0);
-    } catch (FileNotFoundException e) {
-      throw new Error(e);
-    } catch (IOException e) {
-      throw new Error(e);
-    }
+  private ReplayLogStore.Segment nextSegment() {
+    return store.open(getLogName(curLog++), LOG_SIZE);
   }
 
   @Override
   public void onCommit(Iteration it, int iterationId, Object item) {
     checkValidity();
-    // Subtle issue: when getIndex calls rotate, it may update
-    // the log variable, so we need to call getIndex first before
-    // calling any methods on log.
-    int index = getIndex();
-    log.putEntry(index, Action.POLL, getRid(item), iterationId);
+    putEntry(Action.POLL, getRid(item), iterationId);
   }
 
   @Override
   public void onCallbackExecute(long rid) {
-    int index = getIndex();
-    log.putEntry(index, Action.CALLBACK, rid, -1);
+    putEntry(Action.CALLBACK, rid, -1);
   }
 
   @Override
@@ -150,14 +156,21 @@ class RecordReplayFeature extends ReplayFeature {
   @Override
   public void onFinish() {
     checkValidity();
-    boolean exactlyFull = cur.get() == LOG_SIZE;
-    log.setSize(cur.get());
-    rotateLog();
-    if (exactlyFull) {
-      // Exactly full, need to create a new log
-      // to signal the end
-      log.setSize(0);
-      rotateLog();
+    // A log that is not full marks the end of a loop
+    int size = getIndex(cur.get());
+    if (segment != null) {
+      store.seal(segment, size);
+    }
+    if (segment == null || size == LOG_SIZE) {
+      store.seal(nextSegment(), 0);
     }
+    segment = null;
+    cur.set(((long) curLog << 32) | LOG_SIZE);
+  }
+
+  @Override
+  public void invalidate() {
+    store.close();
+    super.invalidate();
   }
 }
@@ -24,7 +24,9 @@ kind.
 
 package galois.runtime;
 
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import util.Launcher;
 import fn.LambdaVoid;
@@ -38,6 +40,9 @@ import fn.LambdaVoid;
 public abstract class ReplayFeature {
   private static final int CACHE_MULTIPLE = 16;
 
+  /**
+   * counter of an iteration when it made its first rid plus one, 0 if it has not made one
+   */
   private final int[] first;
   private final int[] counters;
 
@@ -67,7 +72,7 @@ public abstract class ReplayFeature {
       undoActions[iterationId] = new Callback() {
         @Override
         public void call() {
-          counters[index] = first[index];
+          counters[index] = first[index] - 1;
           first[index] = 0;
         }
       };
@@ -105,7 +110,7 @@ public abstract class ReplayFeature {
     if (it != null) {
       int index = getCounterIndex(iterationId);
       if (first[index] == 0) {
-        first[index] = counters[index];
+        first[index] = counters[index] + 1;
         it.addUndoAction(undoActions[iterationId]);
         it.addCommitAction(commitActions[iterationId]);
       }
@@ -185,12 +190,13 @@ public abstract class ReplayFeature {
   }
 
   /**
-   * The three different types of replay features.
+   * The different types of replay features. DETERMINISTIC records nothing; unordered
+   * loops are executed by a {@link DeterministicExecutor} instead.
    * 
    *
    */
   static enum Type {
-    RECORD, PLAYBACK, NO;
+    RECORD, PLAYBACK, NO, DETERMINISTIC;
     @SuppressWarnings("unchecked")
     public ReplayFeature create(int numThreads) {
       switch (this) {
@@ -199,6 +205,7 @@ public abstract class ReplayFeature {
       case PLAYBACK:
         return new PlaybackReplayFeature(numThreads);
       case NO:
+      case DETERMINISTIC:
         return new NoReplayFeature(numThreads);
       default:
         throw new Error("Unknown option: " + this);
@@ -217,17 +224,25 @@ public abstract class ReplayFeature {
 
   /**
    * Log that stores active elements and callbacks for deterministic
-   * replay.
+   * replay. Entries are fixed-width records in a byte buffer, which is a
+   * memory-mapped log file when recording or playing back uncompressed logs.
+   * 
+   * Format (little endian):
+   * <pre>
+   *  header  int magic, int capacity, int size, int unused
+   *  entry   long rid, int iterationId, int action
+   * </pre>
    * 
    *
    */
-  static final class Log implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private Action[] actions;
-    private long[] rids;
-    private int[] iterationIds;
-    private int size;
+  static final class Log {
+    private static final int MAGIC = 0x47524c31;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+    private final ByteBuffer buffer;
     private final int capacity;
+    private final AtomicInteger numWritten;
+    private int size;
 
     /**
      * Entries are either active elements (POLL) or callbacks (CALLBACK).
@@ -237,40 +252,85 @@ public abstract class ReplayFeature {
       POLL, CALLBACK
     }
 
+    private static final Action[] actions = Action.values();
+
+    private Log(ByteBuffer buffer, int capacity, int size) {
+      this.buffer = buffer;
+      this.capacity = capacity;
+      this.size = size;
+      numWritten = new AtomicInteger();
+    }
+
     /**
-     * Creates a new log file capable of storing at most the given
+     * Creates a new, empty log capable of storing at most the given
      * capacity of entries.
      * 
+     * @param buffer    buffer of at least {@link #getByteSize(int)} bytes to store entries in
      * @param capacity  maximum capacity of log file
      */
-    public Log(int capacity) {
-      this.capacity = capacity;
-      actions = new Action[capacity];
-      rids = new long[capacity];
-      iterationIds = new int[capacity];
-      size = capacity;
+    static Log create(ByteBuffer buffer, int capacity) {
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, capacity);
+      buffer.putInt(8, 0);
+      return new Log(buffer, capacity, capacity);
+    }
+
+    /**
+     * Reads a log previously written with {@link #create(ByteBuffer, int)}.
+     * 
+     * @param buffer  contents of the log
+     */
+    static Log read(ByteBuffer buffer) {
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new Error("Not a replay log");
+      }
+      return new Log(buffer, buffer.getInt(4), buffer.getInt(8));
+    }
+
+    /**
+     * @return  number of bytes needed to store a log of the given capacity
+     */
+    static long getByteSize(int capacity) {
+      return HEADER_SIZE + (long) capacity * ENTRY_SIZE;
     }
 
+    /**
+     * Puts an entry. Different threads may put entries with different indices concurrently.
+     */
     public void putEntry(int index, Action action, long rid, int iterationId) {
-      actions[index] = action;
-      rids[index] = rid;
-      iterationIds[index] = iterationId;
+      int offset = HEADER_SIZE + index * ENTRY_SIZE;
+      buffer.putLong(offset, rid);
+      buffer.putInt(offset + 8, iterationId);
+      buffer.putInt(offset + 12, action.ordinal());
+      numWritten.incrementAndGet();
     }
 
     public Action getAction(int index) {
-      return actions[index];
+      return actions[buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 12)];
     }
 
     public long getRid(int index) {
-      return rids[index];
+      return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE);
     }
 
     public int getIterationId(int index) {
-      return iterationIds[index];
+      return buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 8);
+    }
+
+    /**
+     * Waits until the first <code>size</code> entries have been put.
+     */
+    void awaitEntries(int size) {
+      while (numWritten.get() < size) {
+        Thread.yield();
+      }
     }
 
     public void setSize(int size) {
       this.size = size;
+      buffer.putInt(8, size);
     }
 
     public int size() {
@@ -0,0 +1,264 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: ReplayLogStore.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import galois.runtime.ReplayFeature.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import util.SystemProperties;
+
+/**
+ * Files backing deterministic replay logs. Logs are written directly into
+ * memory-mapped files. Full logs are handed to a background thread that waits for
+ * outstanding entries, writes the final size, flushes and trims the file and,
+ * if the property <code>replayCompress</code> is set, gzips it.
+ * 
+ *
+ */
+final class ReplayLogStore implements Runnable {
+  private static final boolean COMPRESS = SystemProperties.getBooleanProperty("replayCompress", false);
+  private static final String COMPRESSED_SUFFIX = ".gz";
+
+  private final BlockingQueue<Segment> sealQueue;
+  private final ReentrantLock lock;
+  private final Condition idle;
+  private final Thread thread;
+  private final Thread shutdownHook;
+  private int numPending;
+  private IOException error;
+
+  /**
+   * A log being recorded and the file backing it.
+   */
+  static final class Segment {
+    final Log log;
+    private final String name;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private int size;
+
+    private Segment(String name, int capacity) throws IOException {
+      this.name = name;
+      new File(name + COMPRESSED_SUFFIX).delete();
+      file = new RandomAccessFile(name, "rw");
+      file.setLength(Log.getByteSize(capacity));
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Log.getByteSize(capacity));
+      log = Log.create(buffer, capacity);
+    }
+  }
+
+  ReplayLogStore() {
+    sealQueue = new LinkedBlockingQueue<Segment>();
+    lock = new ReentrantLock();
+    idle = lock.newCondition();
+    thread = new Thread(this, "ReplayLogStore");
+    thread.setDaemon(true);
+    thread.start();
+    // Don't lose logs still being sealed when the program exits
+    shutdownHook = new Thread() {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Creates a new log backed by a memory-mapped file.
+   * 
+   * @param name      name of the file
+   * @param capacity  maximum number of entries
+   * @return          a segment whose log can be filled concurrently
+   */
+  Segment open(String name, int capacity) {
+    try {
+      return new Segment(name, capacity);
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  /**
+   * Finishes a log in the background. Entries may still be put into indices less
+   * than <code>size</code>; the log is sealed once they have all been put.
+   * 
+   * @param segment  the segment to seal
+   * @param size     number of entries in the log
+   */
+  void seal(Segment segment, int size) {
+    segment.size = size;
+    lock.lock();
+    try {
+      numPending++;
+    } finally {
+      lock.unlock();
+    }
+    sealQueue.add(segment);
+  }
+
+  /**
+   * Waits until all logs passed to {@link #seal(Segment, int)} are on disk.
+   */
+  void drain() {
+    lock.lock();
+    try {
+      while (numPending > 0) {
+        idle.await();
+      }
+      if (error != null) {
+        throw new Error(error);
+      }
+    } catch (InterruptedException e) {
+      throw new Error(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits for pending logs and stops the background thread.
+   */
+  void close() {
+    drain();
+    thread.interrupt();
+    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      Segment segment;
+      try {
+        segment = sealQueue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      try {
+        finish(segment);
+      } catch (IOException e) {
+        error = e;
+      }
+
+      lock.lock();
+      try {
+        numPending--;
+        idle.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void finish(Segment segment) throws IOException {
+    segment.log.awaitEntries(segment.size);
+    segment.log.setSize(segment.size);
+    segment.buffer.force();
+    segment.file.setLength(Log.getByteSize(segment.size));
+    segment.file.close();
+
+    if (COMPRESS) {
+      File raw = new File(segment.name);
+      InputStream in = new FileInputStream(raw);
+      OutputStream out = new GZIPOutputStream(new FileOutputStream(segment.name + COMPRESSED_SUFFIX));
+      try {
+        byte[] buf = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+          out.write(buf, 0, n);
+        }
+      } finally {
+        in.close();
+        out.close();
+      }
+      raw.delete();
+    }
+  }
+
+  /**
+   * Reads a log written by a store. Uncompressed logs are mapped rather than copied.
+   * 
+   * @param name  name of the log file
+   * @return      the log
+   */
+  static Log read(String name) {
+    try {
+      File raw = new File(name);
+      if (raw.exists()) {
+        RandomAccessFile file = new RandomAccessFile(raw, "r");
+        try {
+          return Log.read(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        } finally {
+          file.close();
+        }
+      }
+
+      InputStream in = new GZIPInputStream(new FileInputStream(name + COMPRESSED_SUFFIX));
+      try {
+        byte[] header = new byte[Log.HEADER_SIZE];
+        readFully(in, header, 0, header.length);
+        int size = Log.read(ByteBuffer.wrap(header)).size();
+        byte[] bytes = new byte[(int) Log.getByteSize(size)];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        readFully(in, bytes, header.length, bytes.length - header.length);
+        return Log.read(ByteBuffer.wrap(bytes));
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      int n = in.read(bytes, offset, length);
+      if (n < 0) {
+        throw new IOException("Truncated replay log");
+      }
+      offset += n;
+      length -= n;
+    }
+  }
+}
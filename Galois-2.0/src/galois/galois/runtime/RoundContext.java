@@ -0,0 +1,56 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: RoundContext.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+/**
+ * Reference to the context calling {@link GaloisRuntime#foreachRounds(Iterable, fn.Lambda2Void, RoundCallback)}.
+ * 
+ * <p>
+ * Elements added with {@link #add(Object)} are processed in the next round. Within a
+ * round, elements are processed in parallel without conflict detection or undo, so the
+ * function applied to them must only make updates that are safe to run concurrently.
+ * {@link #suspendWith(Callback)} and {@link #finish()} take effect at the end of the
+ * current round.
+ * </p>
+ *
+ * @param <T>  type of elements of the Galois iterator
+ */
+public interface RoundContext<T> extends ForeachContext<T> {
+  /**
+   * @return  the current round, starting from 0
+   */
+  public int getRound();
+
+  /**
+   * Adds a value to the reduction of the current round. The sum over all elements of
+   * the round is passed to {@link RoundCallback#call(int, int, long)} at the end of
+   * the round.
+   * 
+   * @param delta  value to add
+   */
+  public void reduce(long delta);
+}
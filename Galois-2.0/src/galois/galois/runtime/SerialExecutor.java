@@ -54,6 +54,10 @@ class SerialExecutor<T> implements Executor, ForeachContext<T> {
   public void onUndo(Iteration it, Callback action) {
   }
 
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
   public IterationStatistics call(Lambda2Void<T, ForeachContext<T>> body, Worklist<T> worklist)
       throws ExecutionException {
     this.worklist = worklist;
@@ -123,6 +127,11 @@ class SerialExecutor<T> implements Executor, ForeachContext<T> {
     return 0;
   }
 
+  @Override
+  public int getSocketId() {
+    return 0;
+  }
+
   @Override
   public void suspendWith(Callback call) {
     suspendThunks.addFirst(call);
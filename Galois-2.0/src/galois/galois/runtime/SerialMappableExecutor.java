@@ -94,6 +94,10 @@ class SerialMappableExecutor<T> implements Executor, MapInternalContext {
   public void onUndo(Iteration it, Callback action) {
   }
 
+  @Override
+  public void onUndo(Iteration it, LogAction action, Object arg0, Object arg1, Object arg2, int arg3) {
+  }
+
   @Override
   public boolean isSerial() {
     return true;
@@ -21,27 +21,64 @@ kind.
 
 
 
-
 package galois.runtime;
 
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import util.SystemProperties;
 
 /**
- * Simple thread pool.
+ * Persistent work-stealing thread pool.
  * 
+ * <p>
+ * Each worker owns a deque of tasks. {@link #callAll(List)} deals tasks out
+ * round-robin to the workers' deques; a worker pops from the front of its own
+ * deque and, when that is empty, steals from the back of the deque of some
+ * other worker. Idle workers (and the thread waiting in {@link #callAll(List)})
+ * wait adaptively: they spin for a while, then yield, and finally park until
+ * new work arrives. Short parallel loops therefore mostly hand off work without
+ * going through the OS scheduler.
+ * </p>
+ * 
+ * <p>
+ * Calls may nest: a function running on a worker may itself call
+ * {@link #callAll(List)}. The calling worker then keeps running queued functions
+ * while it waits, and so do workers lent with {@link #helpUntil(AtomicBoolean, long)},
+ * so nested parallel loops run on the same threads instead of new ones. A waiting
+ * thread only runs functions of calls made after the one it waits for; an older
+ * function could wait, directly or not, for the waiting thread itself.
+ * </p>
  *
  */
 class ThreadPool {
-  private final List<Worker> workers;
-  private final List<Thread> threads;
-  private List<? extends Callable<?>> callables;
-  private final Semaphore start;
-  private final Semaphore finish;
+  /**
+   * Number of times an idle thread rechecks for work before yielding.
+   */
+  private static final int SPIN_ROUNDS = SystemProperties.getIntProperty("threadPoolSpinRounds", 1 << 12);
+  /**
+   * Number of times an idle thread yields before parking.
+   */
+  private static final int YIELD_ROUNDS = SystemProperties.getIntProperty("threadPoolYieldRounds", 64);
+  /**
+   * Upper bound on how long a lent thread parks before rechecking whether it is released.
+   */
+  private static final long HELP_PARK_NANOS = 100000;
+
+  private final Worker[] workers;
   private final int numThreads;
+  private final boolean virtual;
+  private final int spinRounds;
+  private final int yieldRounds;
+  private final AtomicLong numBatches;
   private volatile boolean shutdown;
 
   /**
@@ -50,21 +87,35 @@ class ThreadPool {
    * @param numThreads  the number of threads in the thread pool
    */
   public ThreadPool(int numThreads) {
-    this.numThreads = numThreads;
+    this(numThreads, false);
+  }
 
-    workers = new ArrayList<Worker>();
-    threads = new ArrayList<Thread>();
-    start = new Semaphore(0);
-    finish = new Semaphore(0);
+  /**
+   * Create a thread pool with the given number of threads. If <code>virtual</code> is
+   * true and the JVM supports it, the threads are virtual threads, and idle threads park
+   * almost immediately rather than spin, so they do not hold onto carrier threads.
+   * 
+   * @param numThreads  the number of threads in the thread pool
+   * @param virtual     true if the threads should be virtual threads
+   * @see VirtualThreads
+   */
+  public ThreadPool(int numThreads, boolean virtual) {
+    this.numThreads = numThreads;
+    numBatches = new AtomicLong();
+    workers = new ThreadPool.Worker[numThreads];
 
+    boolean allVirtual = numThreads > 0;
     for (int i = 0; i < numThreads; i++) {
-      Worker w = new Worker(i);
-      Thread t = new Thread(w);
-      t.setDaemon(true);
-      threads.add(t);
-      workers.add(w);
+      workers[i] = new Worker(i, virtual && VirtualThreads.isSupported());
+      // creating a virtual thread may have fallen back to a platform thread
+      allVirtual &= workers[i].virtual;
+    }
+    this.virtual = allVirtual;
+    spinRounds = this.virtual ? 0 : SPIN_ROUNDS;
+    yieldRounds = this.virtual ? 1 : YIELD_ROUNDS;
 
-      t.start();
+    for (int i = 0; i < numThreads; i++) {
+      workers[i].thread.start();
     }
   }
 
@@ -73,54 +124,343 @@ class ThreadPool {
    */
   public void shutdown() {
     shutdown = true;
-    start.release(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      LockSupport.unpark(workers[i].thread);
+    }
+  }
+
+  /**
+   * Returns the number of threads in this thread pool.
+   * 
+   * @return  the number of threads
+   */
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * @return  true if the threads of this thread pool are virtual threads
+   */
+  public boolean isVirtual() {
+    return virtual;
   }
 
   /**
-   * Calls the given function with all the threads in the thread pool.
+   * Calls the given functions with the threads in the thread pool. The i-th
+   * function is initially given to the (i mod n)-th thread, but any idle thread may
+   * steal it. The functions should be able to run concurrently with each other, i.e.,
+   * there should be no more functions than threads if the functions wait on each other.
+   * If the caller is itself a thread of this pool, it runs queued functions until all
+   * the given functions are done.
    * 
-   * @param callables  function to call
+   * @param callables  functions to call
    * @throws InterruptedException  if a thread was interrupted waiting for shutdown
    * @throws ExecutionException    if an error was encountered while execution the function
    */
   public void callAll(List<? extends Callable<?>> callables) throws InterruptedException, ExecutionException {
-    this.callables = callables;
-    start.release(numThreads);
-    finish.acquire(numThreads);
+    int size = callables.size();
+    if (size == 0) {
+      return;
+    }
+
+    Batch batch = new Batch(size, numBatches.getAndIncrement());
+    for (int i = 0; i < size; i++) {
+      workers[i % numThreads].push(new Task(callables.get(i), batch));
+    }
+    // A worker that was still looking for work may have stolen a function before its
+    // own was pushed, leaving that one behind a running function. Wake up parked
+    // workers so that they can steal it.
+    for (int i = 0; i < numThreads; i++) {
+      workers[i].wakeup();
+    }
+
+    Worker self = getWorker(Thread.currentThread());
+    if (self != null) {
+      self.helpUntilDone(batch);
+    } else {
+      awaitCompletion(batch);
+    }
+
+    Throwable e = batch.error.get();
+    if (e != null) {
+      throw new ExecutionException(e);
+    }
+  }
+
+  /**
+   * Returns the number of calls to {@link #callAll(List)} so far. Functions of later
+   * calls can be run by threads lent with {@link #helpUntil(AtomicBoolean, long)}.
+   * 
+   * @return  the number of calls
+   */
+  public long getNumCalls() {
+    return numBatches.get();
+  }
+
+  /**
+   * Lends the calling thread to this pool: runs queued functions of the calls
+   * numbered <code>firstCall</code> and later until <code>done</code> becomes true.
+   * Used by threads that must wait in the middle of a function for a nested parallel
+   * loop to finish.
+   * 
+   * @param done       flag that releases the calling thread
+   * @param firstCall  the value of {@link #getNumCalls()} before the nested loop started
+   */
+  public void helpUntil(AtomicBoolean done, long firstCall) {
+    Worker self = getWorker(Thread.currentThread());
+    int rounds = 0;
+    while (!done.get()) {
+      Task task = self != null ? self.findTask(firstCall) : steal(-1, (int) System.nanoTime(), firstCall);
+      if (task != null) {
+        task.run();
+        rounds = 0;
+      } else if (rounds < spinRounds) {
+        rounds++;
+      } else if (rounds < spinRounds + yieldRounds) {
+        rounds++;
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(this, HELP_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * @return  the threads of this pool
+   */
+  Thread[] getThreads() {
+    Thread[] retval = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      retval[i] = workers[i].thread;
+    }
+    return retval;
+  }
+
+  private Worker getWorker(Thread thread) {
     for (int i = 0; i < numThreads; i++) {
-      if (workers.get(i).error != null) {
-        throw new ExecutionException(workers.get(i).error);
+      if (workers[i].thread == thread) {
+        return workers[i];
+      }
+    }
+    return null;
+  }
+
+  private void awaitCompletion(Batch batch) throws InterruptedException {
+    int rounds = 0;
+    while (batch.pending.get() != 0) {
+      if (rounds < spinRounds) {
+        rounds++;
+      } else if (rounds < spinRounds + yieldRounds) {
+        rounds++;
+        Thread.yield();
+      } else {
+        LockSupport.park(this);
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  private Task steal(int self, int seed, long firstCall) {
+    if (numThreads == 1 && self == 0) {
+      return null;
+    }
+    int start = (seed & Integer.MAX_VALUE) % numThreads;
+    for (int i = 0; i < numThreads; i++) {
+      int victim = (start + i) % numThreads;
+      if (victim == self) {
+        continue;
+      }
+      // Tasks are pushed at the head, so functions of calls made by nested loops sit
+      // in front of the older functions a helping thread may not run
+      LinkedBlockingDeque<Task> deque = workers[victim].deque;
+      Iterator<Task> it = deque.descendingIterator();
+      while (it.hasNext()) {
+        Task task = it.next();
+        if (task.batch.id >= firstCall && deque.removeLastOccurrence(task)) {
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * State shared by the functions of one call to {@link ThreadPool#callAll(List)}.
+   */
+  private static class Batch {
+    private final AtomicInteger pending;
+    private final AtomicReference<Throwable> error;
+    private final Thread waiter;
+    private final long id;
+
+    public Batch(int size, long id) {
+      this.id = id;
+      pending = new AtomicInteger(size);
+      error = new AtomicReference<Throwable>();
+      waiter = Thread.currentThread();
+    }
+  }
+
+  private static class Task {
+    private final Callable<?> callable;
+    private final Batch batch;
+
+    public Task(Callable<?> callable, Batch batch) {
+      this.callable = callable;
+      this.batch = batch;
+    }
+
+    private void __stackSamplerRecordMe() throws Exception {
+      callable.call();
+    }
+
+    private void run() {
+      try {
+        __stackSamplerRecordMe();
+      } catch (Throwable e) {
+        batch.error.compareAndSet(null, e);
+      } finally {
+        if (batch.pending.decrementAndGet() == 0) {
+          LockSupport.unpark(batch.waiter);
+        }
       }
     }
   }
 
   private class Worker implements Runnable {
     private final int id;
-    private Throwable error;
+    private final Thread thread;
+    private final boolean virtual;
+    private final LinkedBlockingDeque<Task> deque;
+    private volatile boolean parked;
+    private int seed;
 
-    public Worker(int id) {
+    public Worker(int id, boolean useVirtual) {
       this.id = id;
+      deque = new LinkedBlockingDeque<Task>();
+      seed = id * 0x9E3779B9 + 1;
+      if (useVirtual) {
+        thread = VirtualThreads.newThread(this, "GaloisWorker-" + id);
+      } else {
+        thread = new Thread(this, "GaloisWorker-" + id);
+        thread.setDaemon(true);
+      }
+      virtual = VirtualThreads.isVirtual(thread);
     }
 
-    private void __stackSamplerRecordMe() throws Exception {
-      callables.get(id).call();
+    private void push(Task task) {
+      deque.offerFirst(task);
+      wakeup();
+    }
+
+    private void wakeup() {
+      if (parked) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    private int nextVictim() {
+      // xorshift
+      seed ^= seed << 13;
+      seed ^= seed >>> 17;
+      seed ^= seed << 5;
+      return seed;
+    }
+
+    private Task findTask() {
+      return findTask(0);
+    }
+
+    private Task findTask(long firstCall) {
+      Task task = deque.pollFirst();
+      if (task != null && task.batch.id < firstCall) {
+        deque.offerFirst(task);
+        task = null;
+      }
+      if (task == null) {
+        task = steal(id, nextVictim(), firstCall);
+      }
+      return task;
+    }
+
+    private Task awaitTask() {
+      int rounds = 0;
+      while (!shutdown) {
+        Task task = findTask();
+        if (task != null) {
+          return task;
+        }
+
+        if (rounds < spinRounds) {
+          rounds++;
+        } else if (rounds < spinRounds + yieldRounds) {
+          rounds++;
+          Thread.yield();
+        } else {
+          parked = true;
+          try {
+            // Recheck after publishing that we are parked, so a concurrent
+            // push either sees the flag or we see its task
+            task = findTask();
+            if (task != null) {
+              return task;
+            }
+            if (!shutdown) {
+              LockSupport.park(this);
+            }
+          } finally {
+            parked = false;
+          }
+          Thread.interrupted();
+        }
+      }
+      return null;
+    }
+
+    private void helpUntilDone(Batch batch) {
+      int rounds = 0;
+      while (batch.pending.get() != 0) {
+        Task task = findTask(batch.id);
+        if (task != null) {
+          task.run();
+          rounds = 0;
+        } else if (rounds < spinRounds) {
+          rounds++;
+        } else if (rounds < spinRounds + yieldRounds) {
+          rounds++;
+          Thread.yield();
+        } else {
+          parked = true;
+          try {
+            // Either a push or the last function of the batch unparks us
+            task = findTask(batch.id);
+            if (task != null) {
+              task.run();
+            } else if (batch.pending.get() != 0) {
+              LockSupport.park(this);
+            }
+          } finally {
+            parked = false;
+          }
+          Thread.interrupted();
+        }
+      }
     }
 
     @Override
     public void run() {
+      if (!virtual) {
+        // functions are dealt out by index, so worker i usually runs process i
+        Topology.bindCurrentThread(id);
+      }
       while (!shutdown) {
-        try {
-          start.acquire();
-          if (!shutdown) {
-            __stackSamplerRecordMe();
-          }
-        } catch (InterruptedException e) {
-          error = e;
-        } catch (Throwable e) {
-          error = e;
-        } finally {
-          finish.release();
+        Task task = awaitTask();
+        if (task == null) {
+          break;
         }
+        task.run();
       }
     }
   }
@@ -0,0 +1,248 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: Topology.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import util.CPUFunctions;
+import util.SystemProperties;
+
+/**
+ * Maps worker threads to cpus and sockets.
+ * 
+ * <p>
+ * Thread ids are assigned to cpus in socket order: the first threads fill the distinct
+ * cores of socket 0 before its hyperthreads, then socket 1 and so on. The layout is read
+ * from <code>/sys/devices/system/cpu</code>; where that is not available, all cpus are
+ * assumed to be on one socket. Setting the property <code>numSockets</code> instead
+ * splits the threads evenly over the given number of sockets, which is useful to try
+ * out socket-aware worklists on a single-socket machine.
+ * </p>
+ * 
+ * <p>
+ * If the property <code>pinThreads</code> is true, worker threads are also bound to
+ * their cpus, first through {@link CPUFunctions#setAffinity(int)} and otherwise by
+ * running <code>taskset</code> on the thread's Linux task id. If neither works, threads
+ * are not bound and the socket ids only describe the intended placement.
+ * </p>
+ *
+ */
+final class Topology {
+  private static Logger logger = Logger.getLogger("galois.runtime.Topology");
+
+  private static final String CPU_DIR = "/sys/devices/system/cpu";
+  private static final boolean PIN_THREADS = SystemProperties.getBooleanProperty("pinThreads", false);
+
+  /**
+   * cpu of the i-th thread, or -1 if unknown
+   */
+  private static final int[] cpus;
+  /**
+   * socket of the i-th thread, from 0 to numSockets - 1
+   */
+  private static final int[] sockets;
+  private static final int numSockets;
+  private static boolean warned;
+
+  static {
+    int fakeSockets = SystemProperties.getIntProperty("numSockets", 0);
+    List<int[]> layout = fakeSockets > 0 ? null : readLayout();
+
+    if (layout == null || layout.isEmpty()) {
+      int n = Math.max(1, fakeSockets);
+      int numCpus = Runtime.getRuntime().availableProcessors();
+      int perSocket = (numCpus + n - 1) / n;
+      cpus = new int[numCpus];
+      sockets = new int[numCpus];
+      for (int i = 0; i < numCpus; i++) {
+        cpus[i] = layout == null ? i : -1;
+        sockets[i] = i / perSocket;
+      }
+      numSockets = n;
+    } else {
+      cpus = new int[layout.size()];
+      sockets = new int[layout.size()];
+      Map<Integer, Integer> socketIds = new HashMap<Integer, Integer>();
+      for (int i = 0; i < cpus.length; i++) {
+        int[] entry = layout.get(i);
+        Integer socket = socketIds.get(entry[1]);
+        if (socket == null) {
+          socket = socketIds.size();
+          socketIds.put(entry[1], socket);
+        }
+        cpus[i] = entry[0];
+        sockets[i] = socket;
+      }
+      numSockets = socketIds.size();
+    }
+  }
+
+  private Topology() {
+  }
+
+  /**
+   * @return  the number of sockets threads are placed on
+   */
+  public static int getNumSockets() {
+    return numSockets;
+  }
+
+  /**
+   * @param tid  a thread id
+   * @return     the socket the given thread is placed on
+   */
+  public static int getSocket(int tid) {
+    return sockets[tid % sockets.length];
+  }
+
+  /**
+   * @param tid  a thread id
+   * @return     the cpu the given thread is placed on, or -1 if unknown
+   */
+  public static int getCpu(int tid) {
+    return cpus[tid % cpus.length];
+  }
+
+  /**
+   * Binds the calling thread to the cpu of the given thread id if the property
+   * <code>pinThreads</code> is set.
+   * 
+   * @param tid  the thread id of the calling thread
+   */
+  public static void bindCurrentThread(int tid) {
+    if (!PIN_THREADS) {
+      return;
+    }
+    int cpu = getCpu(tid);
+    if (cpu < 0 || CPUFunctions.setAffinity(cpu) || taskset(cpu)) {
+      return;
+    }
+    synchronized (Topology.class) {
+      if (!warned) {
+        warned = true;
+        logger.warning("Could not bind threads to cpus, continuing unbound");
+      }
+    }
+  }
+
+  private static boolean taskset(int cpu) {
+    try {
+      // /proc/thread-self links to <pid>/task/<tid>
+      String task = new File("/proc/thread-self").getCanonicalFile().getName();
+      Process p = new ProcessBuilder("taskset", "-p", "-c", Integer.toString(cpu), task).redirectErrorStream(true)
+          .start();
+      p.getInputStream().close();
+      return p.waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns the online cpus as (cpu, socket, core, sibling rank) in socket order, or
+   * null if the layout is not available.
+   */
+  private static List<int[]> readLayout() {
+    File[] dirs = new File(CPU_DIR).listFiles();
+    if (dirs == null) {
+      return null;
+    }
+
+    List<int[]> retval = new ArrayList<int[]>();
+    Map<Long, Integer> siblings = new HashMap<Long, Integer>();
+    for (File dir : dirs) {
+      String name = dir.getName();
+      if (!name.matches("cpu[0-9]+")) {
+        continue;
+      }
+      int cpu = Integer.parseInt(name.substring(3));
+      int socket = readInt(new File(dir, "topology/physical_package_id"));
+      int core = readInt(new File(dir, "topology/core_id"));
+      if (socket < 0 || core < 0) {
+        // offline or no topology information
+        continue;
+      }
+      retval.add(new int[] { cpu, socket, core, 0 });
+    }
+
+    Collections.sort(retval, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] a, int[] b) {
+        return a[0] - b[0];
+      }
+    });
+    for (int[] entry : retval) {
+      Long key = ((long) entry[1] << 32) | entry[2];
+      Integer rank = siblings.get(key);
+      entry[3] = rank == null ? 0 : rank + 1;
+      siblings.put(key, entry[3]);
+    }
+
+    Collections.sort(retval, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] a, int[] b) {
+        for (int i : new int[] { 1, 3, 2, 0 }) {
+          if (a[i] != b[i]) {
+            return a[i] < b[i] ? -1 : 1;
+          }
+        }
+        return 0;
+      }
+    });
+    return retval;
+  }
+
+  private static int readInt(File file) {
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new FileReader(file));
+      return Integer.parseInt(in.readLine().trim());
+    } catch (Exception e) {
+      return -1;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: Trace.java
+
+*/
+
+
+
+
+
+
+package galois.runtime;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import util.SystemProperties;
+
+/**
+ * Timeline of what each thread does during parallel loops, written in the trace event
+ * format of Chrome (chrome://tracing, Perfetto).
+ * 
+ * <p>
+ * Enabled by setting the property <code>traceFile</code> to the file to write to. Each
+ * thread records completed intervals (running an iteration body, aborting, waiting for
+ * work, backing off, clearing the ROB, and being suspended for a nested loop) into its
+ * own ring buffer of <code>traceBufferSize</code> events (default 65536). At the end of
+ * every loop, the events recorded since the last dump are appended to the file; if a
+ * thread recorded more events than fit into its buffer, the oldest ones are dropped.
+ * The file uses the JSON array form of the format, whose closing bracket is optional,
+ * so it is valid after every dump.
+ * </p>
+ *
+ */
+final class Trace {
+  private static Logger logger = Logger.getLogger("galois.runtime.Trace");
+
+  static final int BODY = 0;
+  static final int ABORT = 1;
+  static final int IDLE = 2;
+  static final int BACKOFF = 3;
+  static final int CLEAR_ROB = 4;
+  static final int SUSPENDED = 5;
+  static final int LOOP = 6;
+  private static final String[] NAMES = { "body", "abort", "idle", "backoff", "clearROB", "suspended", "loop" };
+
+  private static final String FILE = System.getProperty("traceFile");
+  /**
+   * whether tracing is enabled, checked before every call so that disabled tracing costs nothing
+   */
+  static final boolean ENABLED = FILE != null;
+  private static final int BUFFER_SIZE = Integer.highestOneBit(Math.max(1, SystemProperties.getIntProperty(
+      "traceBufferSize", 1 << 16)));
+
+  private static final long origin = System.nanoTime();
+  private static final List<Buffer> buffers = new ArrayList<Buffer>();
+  private static final ThreadLocal<Buffer> local = new ThreadLocal<Buffer>() {
+    @Override
+    protected Buffer initialValue() {
+      Buffer b = new Buffer(Thread.currentThread());
+      synchronized (buffers) {
+        buffers.add(b);
+      }
+      return b;
+    }
+  };
+  private static PrintWriter out;
+  private static int nextTid;
+
+  private Trace() {
+  }
+
+  /**
+   * Records an interval of the calling thread that started at <code>start</code>
+   * (from {@link System#nanoTime()}) and ends now.
+   * 
+   * @param kind   what the thread did
+   * @param start  the start of the interval
+   */
+  static void record(int kind, long start) {
+    local.get().add(kind, start, System.nanoTime());
+  }
+
+  /**
+   * Appends the events recorded since the last call to the trace file.
+   */
+  static void dump() {
+    synchronized (buffers) {
+      try {
+        if (out == null) {
+          out = new PrintWriter(new FileWriter(FILE));
+          out.println("[");
+        }
+        for (Buffer b : buffers) {
+          b.dump(out);
+        }
+        out.flush();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not write trace to " + FILE, e);
+      }
+    }
+  }
+
+  private static class Buffer {
+    private final int tid;
+    private final Thread thread;
+    private final int[] kinds;
+    private final long[] starts;
+    private final long[] ends;
+    /**
+     * number of events recorded so far
+     */
+    private long count;
+    private long dumped;
+    private boolean named;
+
+    public Buffer(Thread thread) {
+      this.thread = thread;
+      synchronized (buffers) {
+        tid = nextTid++;
+      }
+      kinds = new int[BUFFER_SIZE];
+      starts = new long[BUFFER_SIZE];
+      ends = new long[BUFFER_SIZE];
+    }
+
+    /**
+     * Events are added under the lock of the buffer so that a concurrent dump never
+     * reads an event that is being overwritten. Only the owning thread adds, so the
+     * lock is almost never contended.
+     */
+    public synchronized void add(int kind, long start, long end) {
+      long c = count;
+      int i = (int) c & (BUFFER_SIZE - 1);
+      kinds[i] = kind;
+      starts[i] = start;
+      ends[i] = end;
+      count = c + 1;
+    }
+
+    /**
+     * Called while holding the lock on <code>buffers</code>.
+     */
+    public synchronized void dump(PrintWriter out) {
+      if (!named) {
+        out.printf("{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": %d, \"args\": {\"name\": \"%s\"}},\n",
+            tid, thread.getName());
+        named = true;
+      }
+
+      long c = count;
+      long first = Math.max(dumped, c - BUFFER_SIZE);
+      if (first > dumped) {
+        out.printf("{\"name\": \"dropped %d events\", \"ph\": \"i\", \"s\": \"t\", \"pid\": 1, \"tid\": %d, "
+            + "\"ts\": %.3f},\n", first - dumped, tid, (starts[(int) first & (BUFFER_SIZE - 1)] - origin) / 1e3);
+      }
+      for (long j = first; j < c; j++) {
+        int i = (int) j & (BUFFER_SIZE - 1);
+        out.printf("{\"name\": \"%s\", \"ph\": \"X\", \"pid\": 1, \"tid\": %d, \"ts\": %.3f, \"dur\": %.3f},\n",
+            NAMES[kinds[i]], tid, (starts[i] - origin) / 1e3, (ends[i] - starts[i]) / 1e3);
+      }
+      dumped = c;
+    }
+  }
+}
@@ -59,7 +59,7 @@ class UnorderedExecutor<T> extends AbstractGaloisExecutor<T> {
 
   @Override
   public void arbitrate(Iteration current, Iteration conflicter) throws IterationAbortException {
-    IterationAbortException.throwException();
+    contentionManager.resolve(current, conflicter);
   }
 
   @Override
@@ -0,0 +1,139 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: VirtualThreads.java
+
+*/
+
+
+
+package galois.runtime;
+
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
+
+/**
+ * Creates the worker threads of a {@link ThreadPool} as virtual threads when the
+ * JVM supports them (Java 21 and up).
+ * 
+ * <p>
+ * Virtual threads are multiplexed over a bounded pool of carrier threads. A worker that
+ * blocks in a {@link java.util.concurrent.locks.Condition} or parks (e.g., while
+ * waiting for more work or for a conflicting ordered iteration to retire) gives up its
+ * carrier, so the runtime can run more logical workers than there are cores without
+ * oversubscribing the cores themselves. The API is accessed reflectively so the
+ * runtime still compiles and runs on older JVMs, where platform threads are used
+ * instead.
+ * </p>
+ *
+ */
+final class VirtualThreads {
+  private static Logger logger = Logger.getLogger("galois.runtime.VirtualThreads");
+
+  private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+  private static final String MAX_POOL_SIZE_PROPERTY = "jdk.virtualThreadScheduler.maxPoolSize";
+
+  private static final Method ofVirtual;
+  private static final Method name;
+  private static final Method unstarted;
+  private static final Method isVirtual;
+
+  static {
+    Method m1 = null;
+    Method m2 = null;
+    Method m3 = null;
+    Method m4 = null;
+    try {
+      m1 = Thread.class.getMethod("ofVirtual");
+      Class<?> builder = m1.getReturnType();
+      m2 = builder.getMethod("name", String.class);
+      m3 = builder.getMethod("unstarted", Runnable.class);
+      m4 = Thread.class.getMethod("isVirtual");
+    } catch (Exception e) {
+      m1 = null;
+    }
+    ofVirtual = m1;
+    name = m2;
+    unstarted = m3;
+    isVirtual = m4;
+  }
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * @return  true if the JVM supports virtual threads
+   */
+  public static boolean isSupported() {
+    return ofVirtual != null;
+  }
+
+  /**
+   * @param t  a thread
+   * @return   true if the given thread is a virtual thread
+   */
+  public static boolean isVirtual(Thread t) {
+    if (ofVirtual == null) {
+      return false;
+    }
+    try {
+      return (Boolean) isVirtual.invoke(t);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Bounds the number of carrier threads used to run virtual threads. Has no effect
+   * if the bounds were already given on the command line or if a virtual thread has
+   * already been created.
+   * 
+   * @param numCarriers  the maximum number of carrier threads
+   */
+  public static void configureCarriers(int numCarriers) {
+    if (System.getProperty(PARALLELISM_PROPERTY) == null) {
+      System.setProperty(PARALLELISM_PROPERTY, Integer.toString(numCarriers));
+    }
+    if (System.getProperty(MAX_POOL_SIZE_PROPERTY) == null) {
+      System.setProperty(MAX_POOL_SIZE_PROPERTY, Integer.toString(numCarriers));
+    }
+  }
+
+  /**
+   * Creates an unstarted thread, a virtual one if supported. Use
+   * {@link #isVirtual(Thread)} to find out which kind was created.
+   * 
+   * @param r           the body of the thread
+   * @param threadName  the name of the thread
+   * @return            a new unstarted thread
+   */
+  public static Thread newThread(Runnable r, String threadName) {
+    if (ofVirtual != null) {
+      try {
+        Object builder = ofVirtual.invoke(null);
+        builder = name.invoke(builder, threadName);
+        return (Thread) unstarted.invoke(builder, r);
+      } catch (Exception e) {
+        logger.warning("Could not create virtual thread, using platform thread: " + e);
+      }
+    }
+
+    Thread t = new Thread(r, threadName);
+    t.setDaemon(true);
+    return t;
+  }
+}
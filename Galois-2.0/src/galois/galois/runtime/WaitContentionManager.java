@@ -0,0 +1,76 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+File: WaitContentionManager.java
+
+*/
+
+
+
+package galois.runtime;
+
+import java.util.concurrent.locks.LockSupport;
+
+import util.SystemProperties;
+
+/**
+ * Waits for the conflicting iteration to release its locks instead of aborting. To
+ * avoid cycles of waiting iterations, only the iteration that precedes the owner in
+ * a fixed total order waits; the other one aborts immediately. Waiting is bounded by
+ * a timeout after which the waiting iteration aborts as well.
+ *
+ */
+public class WaitContentionManager extends ContentionManager {
+  private final long timeoutNanos;
+
+  public WaitContentionManager() {
+    this.timeoutNanos = SystemProperties.getLongProperty("waitTimeoutNanos", 200 * 1000);
+  }
+
+  /**
+   * @param minBackoffNanos  backoff after the first consecutive abort
+   * @param maxBackoffNanos  upper bound on the backoff
+   * @param timeoutNanos     maximum time to wait for the conflicting iteration
+   */
+  public WaitContentionManager(long minBackoffNanos, long maxBackoffNanos, long timeoutNanos) {
+    super(minBackoffNanos, maxBackoffNanos);
+    this.timeoutNanos = timeoutNanos;
+  }
+
+  @Override
+  public void resolve(Iteration current, Iteration conflicter) {
+    if (conflicter == null) {
+      return;
+    }
+
+    if (!precedes(current, conflicter)) {
+      IterationAbortException.throwException();
+    }
+
+    int epoch = conflicter.getReleaseEpoch();
+    long start = System.nanoTime();
+    int spins = 0;
+    while (conflicter.getReleaseEpoch() == epoch) {
+      if (System.nanoTime() - start > timeoutNanos) {
+        IterationAbortException.throwException();
+      }
+      if (++spins > 64) {
+        LockSupport.parkNanos(minBackoffNanos);
+      }
+    }
+  }
+}
@@ -35,6 +35,7 @@ import galois.runtime.ForeachContext;
  *
  * @param <T>  the type of elements of the worklist
  */
+@MatchingIntVersion(ConcurrentIntBucketed.class)
 @MatchingConcurrentVersion(ConcurrentBucketed.class)
 @MatchingLeafVersion(BucketedLeaf.class)
 public class Bucketed<T> implements Worklist<T> {
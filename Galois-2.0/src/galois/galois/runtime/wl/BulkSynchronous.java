@@ -26,6 +26,7 @@ package galois.runtime.wl;
 
 import galois.runtime.ForeachContext;
 
+@MatchingIntVersion(ConcurrentIntBulkSynchronous.class)
 @MatchingLeafVersion(BulkSynchronousLeaf.class)
 @MatchingConcurrentVersion(ConcurrentBulkSynchronous.class)
 public class BulkSynchronous<T> implements Worklist<T> {
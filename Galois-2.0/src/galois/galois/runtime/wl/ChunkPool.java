@@ -0,0 +1,116 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.GaloisRuntime;
+
+/**
+ * Recycles empty chunks of concurrent chunked worklists. Each thread keeps a small cache of
+ * free chunks; chunks that do not fit go to a bounded global cache, which threads draw from
+ * when their own cache is empty. Chunks that fit in neither are left to the garbage collector.
+ * 
+ * <p>
+ * Callers must only return chunks that are empty and no longer reachable by other threads.
+ * </p>
+ *
+ * @param <C>  the type of chunks
+ */
+class ChunkPool<C> {
+  private static final int CACHE_MULTIPLE = 16;
+  /**
+   * Number of free chunks each thread caches locally
+   */
+  private static final int LOCAL_CHUNKS = 4;
+
+  private final Object[][] local;
+  private final int[] localSize;
+  private final Object[] global;
+  private int globalSize;
+
+  public ChunkPool() {
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    local = new Object[numThreads][];
+    for (int i = 0; i < numThreads; i++) {
+      local[i] = new Object[LOCAL_CHUNKS];
+    }
+    localSize = new int[numThreads * CACHE_MULTIPLE];
+    global = new Object[numThreads * LOCAL_CHUNKS];
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  /**
+   * Returns a free chunk
+   * 
+   * @param tid  id of the calling thread
+   * @return     an empty chunk or null if no free chunk is available
+   */
+  @SuppressWarnings("unchecked")
+  public C get(int tid) {
+    int idx = getIndex(tid);
+    int n = localSize[idx];
+    if (n > 0) {
+      Object[] cache = local[tid];
+      Object retval = cache[--n];
+      cache[n] = null;
+      localSize[idx] = n;
+      return (C) retval;
+    }
+
+    synchronized (this) {
+      if (globalSize > 0) {
+        Object retval = global[--globalSize];
+        global[globalSize] = null;
+        return (C) retval;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns an empty chunk to the pool.
+   * 
+   * @param tid    id of the calling thread
+   * @param chunk  an empty chunk
+   */
+  public void put(int tid, C chunk) {
+    int idx = getIndex(tid);
+    int n = localSize[idx];
+    if (n < LOCAL_CHUNKS) {
+      local[tid][n] = chunk;
+      localSize[idx] = n + 1;
+      return;
+    }
+
+    synchronized (this) {
+      if (globalSize < global.length) {
+        global[globalSize++] = chunk;
+      }
+    }
+  }
+}
@@ -40,6 +40,7 @@ import java.util.Deque;
  * @see FIFO
  */
 @NestedAreSerial
+@MatchingIntVersion(ConcurrentIntChunkedFIFO.class)
 @MatchingConcurrentVersion(ConcurrentChunkedFIFO.class)
 @MatchingLeafVersion(ChunkedFIFOLeaf.class)
 public class ChunkedFIFO<T> implements Worklist<T> {
@@ -36,6 +36,7 @@ import galois.runtime.ForeachContext;
  * @see FIFO
  */
 @NestedAreSerial
+@MatchingIntVersion(ConcurrentIntChunkedLIFO.class)
 @MatchingConcurrentVersion(ConcurrentChunkedLIFO.class)
 @MatchingLeafVersion(ChunkedLIFOLeaf.class)
 public class ChunkedLIFO<T> implements Worklist<T> {
@@ -100,14 +101,18 @@ public class ChunkedLIFO<T> implements Worklist<T> {
       retval = current.poll(ctx);
 
       if (retval == null) {
-        current = pollInternal();
+        // keep the empty chunk to add to
+        Worklist<T> next = pollInternal();
+        if (next == null)
+          break;
+        current = next;
       } else {
         break;
       }
     }
 
     if (retval != null)
-      size++;
+      size--;
 
     return retval;
   }
@@ -131,7 +136,7 @@ public class ChunkedLIFO<T> implements Worklist<T> {
 
   @Override
   public boolean isEmpty() {
-    return head == null;
+    return head == null && (current == null || current.isEmpty());
   }
 
   @Override
@@ -81,7 +81,7 @@ public class ChunkedRandomOrder<T> implements Worklist<T> {
    */
   @SuppressWarnings("unchecked")
   public ChunkedRandomOrder(int chunkSize, int initialCapacity, Maker<T> maker, boolean needSize) {
-    this(initialCapacity, initialCapacity, new BoundedLIFO(chunkSize, null, false), needSize);
+    this(chunkSize, initialCapacity, new BoundedLIFO(chunkSize, null, false), needSize);
   }
 
   @SuppressWarnings("unchecked")
@@ -37,7 +37,11 @@ class ConcurrentBucketed<T> implements Worklist<T> {
   private static final int CACHE_MULTIPLE = 16;
 
   private final Lambda<T, Integer> indexer;
-  private Worklist<T>[] bucket;
+  /**
+   * buckets of each socket; a thread looks for work in a bucket of its own socket
+   * before the same bucket of other sockets
+   */
+  private Worklist<T>[][] bucket;
   private final boolean ascending;
   private final int[] cursor;
   private AtomicInteger size;
@@ -49,15 +53,18 @@ class ConcurrentBucketed<T> implements Worklist<T> {
   @SuppressWarnings("unchecked")
   public ConcurrentBucketed(int numBuckets, boolean ascending, Lambda<T, Integer> indexer, Maker<T> maker,
       boolean needSize) {
-    this(numBuckets, ascending, indexer, (Worklist<T>[]) null, needSize);
+    this(numBuckets, ascending, indexer, (Worklist<T>[][]) null, needSize);
 
-    bucket = new Worklist[numBuckets];
-    for (int i = 0; i < numBuckets; i++) {
-      bucket[i] = maker.make();
+    int numSockets = GaloisRuntime.getRuntime().getNumSockets();
+    bucket = new Worklist[numSockets][numBuckets];
+    for (int s = 0; s < numSockets; s++) {
+      for (int i = 0; i < numBuckets; i++) {
+        bucket[s][i] = maker.make();
+      }
     }
   }
 
-  private ConcurrentBucketed(int numBuckets, boolean ascending, Lambda<T, Integer> indexer, Worklist<T>[] bucket,
+  private ConcurrentBucketed(int numBuckets, boolean ascending, Lambda<T, Integer> indexer, Worklist<T>[][] bucket,
       boolean needSize) {
     this.indexer = indexer;
     this.ascending = ascending;
@@ -76,10 +83,13 @@ class ConcurrentBucketed<T> implements Worklist<T> {
   @SuppressWarnings("unchecked")
   @Override
   public Worklist<T> newInstance() {
-    int numBuckets = bucket.length;
-    Worklist<T>[] b = new Worklist[numBuckets];
-    for (int i = 0; i < numBuckets; i++) {
-      b[i] = bucket[i].newInstance();
+    int numSockets = bucket.length;
+    int numBuckets = bucket[0].length;
+    Worklist<T>[][] b = new Worklist[numSockets][numBuckets];
+    for (int s = 0; s < numSockets; s++) {
+      for (int i = 0; i < numBuckets; i++) {
+        b[s][i] = bucket[s][i].newInstance();
+      }
     }
     return new ConcurrentBucketed<T>(numBuckets, ascending, indexer, b, size != null);
   }
@@ -96,7 +106,7 @@ class ConcurrentBucketed<T> implements Worklist<T> {
     if (size != null)
       size.incrementAndGet();
 
-    bucket[index].add(item, ctx);
+    bucket[ctx.getSocketId()][index].add(item, ctx);
 
     if (ascending) {
       if (index < cursor[getIndex(tid)])
@@ -112,14 +122,24 @@ class ConcurrentBucketed<T> implements Worklist<T> {
     add(item, ctx);
   }
 
+  private T poll(int socket, int index, ForeachContext<T> ctx) {
+    T retval = bucket[socket][index].poll(ctx);
+    for (int i = 1; retval == null && i < bucket.length; i++) {
+      retval = bucket[(socket + i) % bucket.length][index].poll(ctx);
+    }
+    return retval;
+  }
+
   @Override
   public T poll(ForeachContext<T> ctx) {
     int tid = ctx.getThreadId();
+    int socket = ctx.getSocketId();
+    int numBuckets = bucket[0].length;
     int cur = cursor[getIndex(tid)];
     T retval = null;
 
-    while (cur < bucket.length && cur >= 0) {
-      retval = bucket[cur].poll(ctx);
+    while (cur < numBuckets && cur >= 0) {
+      retval = poll(socket, cur, ctx);
       if (retval == null) {
         if (ascending) {
           cur++;
@@ -142,7 +162,7 @@ class ConcurrentBucketed<T> implements Worklist<T> {
       if (ascending)
         cursor[getIndex(tid)] = 0;
       else
-        cursor[getIndex(tid)] = bucket.length - 1;
+        cursor[getIndex(tid)] = numBuckets - 1;
     }
 
     return retval;
@@ -161,9 +181,11 @@ class ConcurrentBucketed<T> implements Worklist<T> {
     if (size != null) {
       return size.get() == 0;
     } else {
-      for (int i = 0; i < bucket.length; i++) {
-        if (!bucket[i].isEmpty())
-          return false;
+      for (int s = 0; s < bucket.length; s++) {
+        for (int i = 0; i < bucket[s].length; i++) {
+          if (!bucket[s][i].isEmpty())
+            return false;
+        }
       }
       return true;
     }
@@ -39,7 +39,14 @@ class ConcurrentChunkedFIFO<T> implements Worklist<T> {
   private final int chunkSize;
   private Worklist<T>[] current;
   private Worklist<T>[] next;
-  private final ConcurrentLinkedQueue<Worklist<T>> pool;
+  /**
+   * full chunks, one pool per socket; threads take chunks from their own socket first
+   */
+  private final ConcurrentLinkedQueue<Worklist<T>>[] pool;
+  /**
+   * drained chunks, reused instead of allocating a new chunk whenever one fills
+   */
+  private final ChunkPool<Worklist<T>> free;
   private AtomicInteger size;
 
   public ConcurrentChunkedFIFO(Maker<T> maker, boolean needSize) {
@@ -59,12 +66,18 @@ class ConcurrentChunkedFIFO<T> implements Worklist<T> {
     }
   }
 
+  @SuppressWarnings("unchecked")
   private ConcurrentChunkedFIFO(int chunkSize, Worklist<T>[] current, Worklist<T>[] next, boolean needSize) {
     this.chunkSize = chunkSize;
     this.current = current;
     this.next = next;
 
-    pool = new ConcurrentLinkedQueue<Worklist<T>>();
+    int numSockets = GaloisRuntime.getRuntime().getNumSockets();
+    pool = (ConcurrentLinkedQueue<Worklist<T>>[]) new ConcurrentLinkedQueue<?>[numSockets];
+    for (int i = 0; i < numSockets; i++) {
+      pool[i] = new ConcurrentLinkedQueue<Worklist<T>>();
+    }
+    free = new ChunkPool<Worklist<T>>();
 
     if (needSize)
       size = new AtomicInteger();
@@ -100,8 +113,9 @@ class ConcurrentChunkedFIFO<T> implements Worklist<T> {
     n.add(item, ctx);
 
     if (n.size() >= chunkSize) {
-      pool.add(n);
-      next[idx] = n.newInstance();
+      pool[ctx.getSocketId()].add(n);
+      Worklist<T> chunk = free.get(tid);
+      next[idx] = chunk != null ? chunk : n.newInstance();
     }
   }
 
@@ -110,20 +124,30 @@ class ConcurrentChunkedFIFO<T> implements Worklist<T> {
     add(item, ctx);
   }
 
+  private Worklist<T> pollChunk(int socket) {
+    Worklist<T> retval = pool[socket].poll();
+    for (int i = 1; retval == null && i < pool.length; i++) {
+      retval = pool[(socket + i) % pool.length].poll();
+    }
+    return retval;
+  }
+
   @Override
   public T poll(final ForeachContext<T> ctx) {
     int tid = ctx.getThreadId();
     int idx = getIndex(tid);
+    int socket = ctx.getSocketId();
 
     if (current[idx] == null)
-      current[idx] = pool.poll();
+      current[idx] = pollChunk(socket);
 
     T retval = null;
     while (current[idx] != null) {
       retval = current[idx].poll(ctx);
 
       if (retval == null) {
-        current[idx] = pool.poll();
+        free.put(tid, current[idx]);
+        current[idx] = pollChunk(socket);
       } else {
         break;
       }
@@ -145,7 +169,11 @@ class ConcurrentChunkedFIFO<T> implements Worklist<T> {
     if (size != null) {
       return size.get() == 0;
     } else {
-      return pool.isEmpty();
+      for (int i = 0; i < pool.length; i++) {
+        if (!pool[i].isEmpty())
+          return false;
+      }
+      return true;
     }
   }
 
@@ -39,6 +39,10 @@ class ConcurrentChunkedLIFO<T> implements Worklist<T> {
   private final int chunkSize;
   private Worklist<T>[] current;
   private final AtomicReference<Node<T>> head;
+  /**
+   * drained chunks, reused instead of allocating a new chunk whenever one fills
+   */
+  private final ChunkPool<Worklist<T>> free;
   private AtomicInteger size;
 
   public ConcurrentChunkedLIFO(Maker<T> maker, boolean needSize) {
@@ -60,6 +64,7 @@ class ConcurrentChunkedLIFO<T> implements Worklist<T> {
     this.chunkSize = chunkSize;
     this.current = current;
     this.head = new AtomicReference<Node<T>>();
+    this.free = new ChunkPool<Worklist<T>>();
 
     if (needSize)
       size = new AtomicInteger();
@@ -93,7 +98,8 @@ class ConcurrentChunkedLIFO<T> implements Worklist<T> {
 
     if (c.size() >= chunkSize) {
       addInternal(c);
-      current[getIndex(tid)] = c.newInstance();
+      Worklist<T> chunk = free.get(tid);
+      current[getIndex(tid)] = chunk != null ? chunk : c.newInstance();
     }
   }
 
@@ -114,7 +120,13 @@ class ConcurrentChunkedLIFO<T> implements Worklist<T> {
       retval = current[getIndex(tid)].poll(ctx);
 
       if (retval == null) {
-        current[getIndex(tid)] = pollInternal();
+        Worklist<T> chunk = pollInternal();
+        if (chunk == null) {
+          // keep the drained chunk for subsequent adds
+          break;
+        }
+        free.put(tid, current[getIndex(tid)]);
+        current[getIndex(tid)] = chunk;
       } else {
         break;
       }
@@ -31,16 +31,26 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Each thread fills a chunk of its own; full chunks are published to a shared array and
+ * threads that run out of work take a full chunk uniformly at random. Drained chunks are
+ * recycled through a {@link ChunkPool}.
+ *
+ * @param <T>  the type of elements of the worklist
+ */
 @OnlyLeaf
 @MatchingConcurrentVersion(ConcurrentChunkedRandomOrder.class)
 @MatchingLeafVersion(ConcurrentChunkedRandomOrder.class)
 class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
+  private static final int CACHE_MULTIPLE = 16;
+
   private final int chunkSize;
   private final Random[] rand;
   private final int initialCapacity;
-  private int queueSize;
-  private T queue[];
+  private int numChunks;
+  private Worklist<T>[] chunks;
   private Worklist<T>[] current;
+  private final ChunkPool<Worklist<T>> free;
   private AtomicInteger size;
 
   public ConcurrentChunkedRandomOrder(Maker<T> maker, boolean needSize) {
@@ -53,12 +63,12 @@ class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
 
   @SuppressWarnings("unchecked")
   public ConcurrentChunkedRandomOrder(int chunkSize, int initialCapacity, Maker<T> maker, boolean needSize) {
-    this(initialCapacity, initialCapacity, (Worklist<T>[]) null, needSize);
+    this(chunkSize, initialCapacity, (Worklist<T>[]) null, needSize);
     int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
 
-    current = new Worklist[numThreads];
+    current = (Worklist<T>[]) new Worklist<?>[numThreads * CACHE_MULTIPLE];
     for (int i = 0; i < numThreads; i++) {
-      current[i] = new BoundedLIFO(chunkSize, null, false);
+      current[getIndex(i)] = new BoundedLIFO<T>(chunkSize, null, false);
     }
   }
 
@@ -73,7 +83,9 @@ class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
     for (int i = 0; i < numThreads; i++)
       rand[i] = new Random();
 
-    queue = (T[]) new Object[initialCapacity];
+    // capacity is in elements, the shared array holds chunks
+    chunks = (Worklist<T>[]) new Worklist<?>[Math.max(1, initialCapacity / chunkSize)];
+    free = new ChunkPool<Worklist<T>>();
 
     if (needSize)
       size = new AtomicInteger();
@@ -82,75 +94,75 @@ class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
   @SuppressWarnings("unchecked")
   @Override
   public Worklist<T> newInstance() {
-    int numThreads = current.length;
-    Worklist<T>[] c = new Worklist[numThreads];
+    int numThreads = current.length / CACHE_MULTIPLE;
+    Worklist<T>[] c = (Worklist<T>[]) new Worklist<?>[numThreads * CACHE_MULTIPLE];
     for (int i = 0; i < numThreads; i++) {
-      c[i] = current[i].newInstance();
+      c[getIndex(i)] = current[getIndex(i)].newInstance();
     }
 
     return new ConcurrentChunkedRandomOrder<T>(chunkSize, initialCapacity, c, size != null);
   }
 
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
   @Override
   public void add(T item, ForeachContext<T> ctx) {
     int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
 
     if (size != null)
       size.incrementAndGet();
 
-    Worklist<T> c = current[tid];
+    Worklist<T> c = current[idx];
 
     c.add(item, ctx);
 
     if (c.size() >= chunkSize) {
       synchronized (this) {
-        T t;
-        while ((t = c.poll(ctx)) != null) {
-          addInternal(t);
-        }
+        addInternal(c);
       }
+      Worklist<T> chunk = free.get(tid);
+      current[idx] = chunk != null ? chunk : c.newInstance();
     }
   }
 
-  private void addInternal(T item) {
-    if (queueSize + 1 >= queue.length) {
+  private void addInternal(Worklist<T> chunk) {
+    if (numChunks >= chunks.length) {
       resize();
     }
-    queue[queueSize++] = item;
+    chunks[numChunks++] = chunk;
   }
 
   @Override
-  public synchronized void addInitial(T item, ForeachContext<T> ctx) {
-    if (size != null)
-      size.incrementAndGet();
-
-    addInternal(item);
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
   }
 
   @Override
   public T poll(ForeachContext<T> ctx) {
     int tid = ctx.getThreadId();
-    T retval = current[tid].poll(ctx);
+    int idx = getIndex(tid);
+    T retval = current[idx].poll(ctx);
 
     if (retval == null) {
+      Worklist<T> chunk = null;
       synchronized (this) {
-        for (int i = 0; i < chunkSize + 1; i++) {
-          if (queueSize == 0) {
-            break;
-          }
-
-          int bucket = rand[tid].nextInt(queueSize);
-          T item = queue[bucket];
-          if (retval == null)
-            retval = item;
-          else
-            current[tid].add(item, ctx);
-
-          queue[bucket] = queue[queueSize - 1];
-          queue[queueSize - 1] = null;
-          queueSize--;
+        if (numChunks > 0) {
+          int bucket = rand[tid].nextInt(numChunks);
+          chunk = chunks[bucket];
+          chunks[bucket] = chunks[numChunks - 1];
+          chunks[numChunks - 1] = null;
+          numChunks--;
         }
       }
+
+      if (chunk != null) {
+        free.put(tid, current[idx]);
+        current[idx] = chunk;
+        retval = chunk.poll(ctx);
+      }
     }
 
     if (size != null && retval != null)
@@ -161,7 +173,7 @@ class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
 
   @Override
   public synchronized boolean isEmpty() {
-    return queueSize == 0;
+    return numChunks == 0;
   }
 
   @Override
@@ -178,6 +190,6 @@ class ConcurrentChunkedRandomOrder<T> implements Worklist<T> {
   }
 
   private void resize() {
-    queue = Arrays.copyOf(queue, queue.length * 2);
+    chunks = Arrays.copyOf(chunks, chunks.length * 2);
   }
 }
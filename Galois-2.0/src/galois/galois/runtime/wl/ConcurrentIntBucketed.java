@@ -0,0 +1,136 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import fn.IntLambda;
+import galois.runtime.GaloisRuntime;
+import galois.runtime.IntForeachContext;
+
+import java.util.Arrays;
+
+/**
+ * Int version of {@link Bucketed}. Each bucket is a {@link ConcurrentIntChunkedFIFO};
+ * each thread keeps a cursor to the lowest (or highest) bucket it may find work in.
+ */
+class ConcurrentIntBucketed implements IntWorklist {
+  private static final int CACHE_MULTIPLE = 16;
+
+  private final IntLambda indexer;
+  private final ConcurrentIntChunkedFIFO[] bucket;
+  private final boolean ascending;
+  private final int[] cursor;
+
+  public ConcurrentIntBucketed(int numBuckets, IntLambda indexer) {
+    this(numBuckets, true, indexer);
+  }
+
+  public ConcurrentIntBucketed(int numBuckets, boolean ascending, IntLambda indexer) {
+    this.indexer = indexer;
+    this.ascending = ascending;
+
+    bucket = new ConcurrentIntChunkedFIFO[numBuckets];
+    for (int i = 0; i < numBuckets; i++) {
+      bucket[i] = new ConcurrentIntChunkedFIFO();
+    }
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    cursor = new int[numThreads * CACHE_MULTIPLE]; // Make cache-friendly
+
+    if (!ascending)
+      Arrays.fill(cursor, numBuckets - 1);
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  @Override
+  public void add(int item, IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int index = indexer.call(item);
+
+    bucket[index].add(item, ctx);
+
+    if (ascending) {
+      if (index < cursor[getIndex(tid)])
+        cursor[getIndex(tid)] = index;
+    } else {
+      if (index > cursor[getIndex(tid)])
+        cursor[getIndex(tid)] = index;
+    }
+  }
+
+  @Override
+  public void addInitial(int item, IntForeachContext ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public int poll(IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int cur = cursor[getIndex(tid)];
+    int retval = EMPTY;
+
+    while (cur < bucket.length && cur >= 0) {
+      retval = bucket[cur].poll(ctx);
+      if (retval == EMPTY) {
+        if (ascending) {
+          cur++;
+        } else {
+          cur--;
+        }
+      } else {
+        break;
+      }
+    }
+
+    if (retval != EMPTY) {
+      if (cursor[getIndex(tid)] != cur) {
+        cursor[getIndex(tid)] = cur;
+      }
+    } else {
+      if (ascending)
+        cursor[getIndex(tid)] = 0;
+      else
+        cursor[getIndex(tid)] = bucket.length - 1;
+    }
+
+    return retval;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (int i = 0; i < bucket.length; i++) {
+      if (!bucket[i].isEmpty())
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+}
@@ -0,0 +1,203 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.Callback;
+import galois.runtime.GaloisRuntime;
+import galois.runtime.IntForeachContext;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Int version of {@link BulkSynchronous}. Elements added in a round are collected in
+ * per-thread chunks and only become available for polling in the next round. A round
+ * ends when every chunk of the current round has been drained; the thread that
+ * observes this suspends the iterator with a function that makes the added elements
+ * available. Drained chunks are recycled through a {@link ChunkPool}.
+ */
+class ConcurrentIntBulkSynchronous implements IntWorklist {
+  private static final int CACHE_MULTIPLE = 16;
+
+  private final int chunkSize;
+  /**
+   * chunk of the current round each thread is polling from, or null
+   */
+  private final IntChunk[] current;
+  private final IntChunk[] next;
+  /**
+   * full chunks of the current round
+   */
+  private final ConcurrentLinkedQueue<IntChunk> currentChunks;
+  /**
+   * full chunks of the next round
+   */
+  private final ConcurrentLinkedQueue<IntChunk> nextChunks;
+  /**
+   * number of chunks of the current round that are not yet drained
+   */
+  private final AtomicInteger pending;
+  private final ChunkPool<IntChunk> free;
+  private final AtomicBoolean advanceScheduled;
+  private volatile boolean added;
+  private final Callback advance;
+
+  public ConcurrentIntBulkSynchronous() {
+    this(ChunkedFIFO.DEFAULT_CHUNK_SIZE);
+  }
+
+  public ConcurrentIntBulkSynchronous(int chunkSize) {
+    this.chunkSize = chunkSize;
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    current = new IntChunk[numThreads * CACHE_MULTIPLE];
+    next = new IntChunk[numThreads * CACHE_MULTIPLE];
+    for (int i = 0; i < numThreads; i++) {
+      next[getIndex(i)] = new IntChunk(chunkSize);
+    }
+    currentChunks = new ConcurrentLinkedQueue<IntChunk>();
+    nextChunks = new ConcurrentLinkedQueue<IntChunk>();
+    pending = new AtomicInteger();
+    free = new ChunkPool<IntChunk>();
+    advanceScheduled = new AtomicBoolean();
+
+    advance = new Callback() {
+      @Override
+      public void call() {
+        // Called serially after the current round is drained, so the chunks of
+        // other threads may be touched
+        for (int i = 0; i < next.length; i += CACHE_MULTIPLE) {
+          if (!next[i].isEmpty()) {
+            nextChunks.add(next[i]);
+            next[i] = newChunk(i / CACHE_MULTIPLE);
+          }
+        }
+        int count = 0;
+        IntChunk chunk;
+        while ((chunk = nextChunks.poll()) != null) {
+          currentChunks.add(chunk);
+          count++;
+        }
+        pending.set(count);
+        added = false;
+        advanceScheduled.set(false);
+      }
+    };
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  private IntChunk newChunk(int tid) {
+    IntChunk chunk = free.get(tid);
+    return chunk != null ? chunk : new IntChunk(chunkSize);
+  }
+
+  @Override
+  public void add(int item, IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
+
+    if (!added)
+      added = true;
+
+    IntChunk n = next[idx];
+
+    n.add(item);
+
+    if (n.isFull()) {
+      nextChunks.add(n);
+      next[idx] = newChunk(tid);
+    }
+  }
+
+  @Override
+  public void addInitial(int item, IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
+
+    // initial elements belong to the first round
+    IntChunk c = current[idx];
+    if (c == null) {
+      c = newChunk(tid);
+      current[idx] = c;
+    } else if (c.isFull()) {
+      currentChunks.add(c);
+      c = newChunk(tid);
+      current[idx] = c;
+    }
+    c.add(item);
+  }
+
+  @Override
+  public int poll(IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
+
+    IntChunk c = current[idx];
+    while (true) {
+      if (c != null) {
+        int retval = c.pollFirst();
+        if (retval != EMPTY) {
+          return retval;
+        }
+        current[idx] = null;
+        free.put(tid, c);
+        pending.decrementAndGet();
+      }
+      c = currentChunks.poll();
+      if (c == null) {
+        break;
+      }
+      current[idx] = c;
+    }
+
+    // Only advance once no thread holds elements of the current round
+    if (added && pending.get() == 0 && advanceScheduled.compareAndSet(false, true)) {
+      ctx.suspendWith(advance);
+    }
+
+    return EMPTY;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return pending.get() == 0 && !added;
+  }
+
+  @Override
+  public void finishAddInitial() {
+    // Called serially
+    int count = currentChunks.size();
+    for (int i = 0; i < current.length; i += CACHE_MULTIPLE) {
+      if (current[i] != null) {
+        count++;
+      }
+    }
+    pending.set(count);
+  }
+}
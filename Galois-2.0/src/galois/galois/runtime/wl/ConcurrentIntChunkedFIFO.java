@@ -0,0 +1,147 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.GaloisRuntime;
+import galois.runtime.IntForeachContext;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Int version of {@link ChunkedFIFO}. Each thread fills a chunk of its own; full chunks
+ * are queued per socket and taken in FIFO order, and each chunk is FIFO as well.
+ * Drained chunks are recycled through a {@link ChunkPool}.
+ */
+class ConcurrentIntChunkedFIFO implements IntWorklist {
+  private static final int CACHE_MULTIPLE = 16;
+
+  private final int chunkSize;
+  private final IntChunk[] current;
+  private final IntChunk[] next;
+  /**
+   * full chunks, one pool per socket; threads take chunks from their own socket first
+   */
+  private final ConcurrentLinkedQueue<IntChunk>[] pool;
+  private final ChunkPool<IntChunk> free;
+
+  public ConcurrentIntChunkedFIFO() {
+    this(ChunkedFIFO.DEFAULT_CHUNK_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  public ConcurrentIntChunkedFIFO(int chunkSize) {
+    this.chunkSize = chunkSize;
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    current = new IntChunk[numThreads * CACHE_MULTIPLE];
+    next = new IntChunk[numThreads * CACHE_MULTIPLE];
+    for (int i = 0; i < numThreads; i++) {
+      next[getIndex(i)] = new IntChunk(chunkSize);
+    }
+
+    int numSockets = GaloisRuntime.getRuntime().getNumSockets();
+    pool = (ConcurrentLinkedQueue<IntChunk>[]) new ConcurrentLinkedQueue<?>[numSockets];
+    for (int i = 0; i < numSockets; i++) {
+      pool[i] = new ConcurrentLinkedQueue<IntChunk>();
+    }
+    free = new ChunkPool<IntChunk>();
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  @Override
+  public void add(int item, IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
+
+    IntChunk n = next[idx];
+
+    n.add(item);
+
+    if (n.isFull()) {
+      pool[ctx.getSocketId()].add(n);
+      IntChunk chunk = free.get(tid);
+      next[idx] = chunk != null ? chunk : new IntChunk(chunkSize);
+    }
+  }
+
+  @Override
+  public void addInitial(int item, IntForeachContext ctx) {
+    add(item, ctx);
+  }
+
+  private IntChunk pollChunk(int socket) {
+    IntChunk retval = pool[socket].poll();
+    for (int i = 1; retval == null && i < pool.length; i++) {
+      retval = pool[(socket + i) % pool.length].poll();
+    }
+    return retval;
+  }
+
+  @Override
+  public int poll(IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+    int idx = getIndex(tid);
+    int socket = ctx.getSocketId();
+
+    if (current[idx] == null)
+      current[idx] = pollChunk(socket);
+
+    int retval = EMPTY;
+    while (current[idx] != null) {
+      retval = current[idx].pollFirst();
+
+      if (retval == EMPTY) {
+        free.put(tid, current[idx]);
+        current[idx] = pollChunk(socket);
+      } else {
+        break;
+      }
+    }
+
+    // Current and pool are empty, try our next chunk
+    if (current[idx] == null) {
+      retval = next[idx].pollFirst();
+    }
+
+    return retval;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (int i = 0; i < pool.length; i++) {
+      if (!pool[i].isEmpty())
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+}
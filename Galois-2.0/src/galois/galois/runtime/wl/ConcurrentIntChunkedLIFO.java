@@ -0,0 +1,143 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.GaloisRuntime;
+import galois.runtime.IntForeachContext;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Int version of {@link ChunkedLIFO}. Each thread adds to and polls from a chunk of its
+ * own in LIFO order; full chunks are pushed on a shared stack. Drained chunks are
+ * recycled through a {@link ChunkPool}.
+ */
+class ConcurrentIntChunkedLIFO implements IntWorklist {
+  private static final int CACHE_MULTIPLE = 16;
+
+  private final int chunkSize;
+  private final IntChunk[] current;
+  private final AtomicReference<Node> head;
+  private final ChunkPool<IntChunk> free;
+
+  public ConcurrentIntChunkedLIFO() {
+    this(ChunkedLIFO.DEFAULT_CHUNK_SIZE);
+  }
+
+  public ConcurrentIntChunkedLIFO(int chunkSize) {
+    this.chunkSize = chunkSize;
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    current = new IntChunk[numThreads * CACHE_MULTIPLE];
+    for (int i = 0; i < numThreads; i++) {
+      current[getIndex(i)] = new IntChunk(chunkSize);
+    }
+    head = new AtomicReference<Node>();
+    free = new ChunkPool<IntChunk>();
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  @Override
+  public void add(int item, IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+
+    IntChunk c = current[getIndex(tid)];
+
+    c.add(item);
+
+    if (c.isFull()) {
+      addInternal(c);
+      IntChunk chunk = free.get(tid);
+      current[getIndex(tid)] = chunk != null ? chunk : new IntChunk(chunkSize);
+    }
+  }
+
+  @Override
+  public void addInitial(int item, IntForeachContext ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public int poll(IntForeachContext ctx) {
+    int tid = ctx.getThreadId();
+
+    int retval;
+    while ((retval = current[getIndex(tid)].pollLast()) == EMPTY) {
+      IntChunk chunk = pollInternal();
+      if (chunk == null) {
+        // keep the drained chunk for subsequent adds
+        break;
+      }
+      free.put(tid, current[getIndex(tid)]);
+      current[getIndex(tid)] = chunk;
+    }
+
+    return retval;
+  }
+
+  private void addInternal(IntChunk chunk) {
+    Node next = new Node(chunk);
+    Node cur;
+    do {
+      cur = head.get();
+      next.next = cur;
+    } while (!head.compareAndSet(cur, next));
+  }
+
+  private IntChunk pollInternal() {
+    Node next;
+    Node cur;
+    do {
+      cur = head.get();
+      if (cur == null)
+        return null;
+      next = cur.next;
+    } while (!head.compareAndSet(cur, next));
+
+    return cur.chunk;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return head.get() == null;
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+
+  private static class Node {
+    private Node next;
+    private IntChunk chunk;
+
+    public Node(IntChunk chunk) {
+      this.chunk = chunk;
+    }
+  }
+}
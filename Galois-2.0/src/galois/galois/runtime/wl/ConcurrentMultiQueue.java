@@ -0,0 +1,244 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.ForeachContext;
+import galois.runtime.GaloisRuntime;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MultiQueue: independent binary heaps, each guarded by a lock that threads only try to
+ * acquire. Adds go to a random heap; polls compare the cached minimum elements of two
+ * random heaps and take from the better one. If a thread keeps finding empty heaps, it
+ * checks all heaps before reporting that there is no work.
+ *
+ * @param <T>  the type of elements of the worklist
+ */
+@OnlyLeaf
+@MatchingConcurrentVersion(ConcurrentMultiQueue.class)
+@MatchingLeafVersion(ConcurrentMultiQueue.class)
+class ConcurrentMultiQueue<T> implements Worklist<T> {
+  private static final int CACHE_MULTIPLE = 16;
+  /**
+   * Number of random attempts to find a non-empty, uncontended heap before checking all of them
+   */
+  private static final int RANDOM_ATTEMPTS = 8;
+
+  private final Comparator<T> comp;
+  private final int queuesPerThread;
+  private final Heap<T>[] heaps;
+  private final int[] seeds;
+  private AtomicInteger size;
+
+  public ConcurrentMultiQueue(Comparator<T> comp, Maker<T> maker, boolean needSize) {
+    this(comp, MultiQueue.DEFAULT_QUEUES_PER_THREAD, maker, needSize);
+  }
+
+  @SuppressWarnings("unchecked")
+  public ConcurrentMultiQueue(Comparator<T> comp, int queuesPerThread, Maker<T> maker, boolean needSize) {
+    this.comp = comp;
+    this.queuesPerThread = queuesPerThread;
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    int numHeaps = Math.max(2, queuesPerThread * numThreads);
+    heaps = (Heap<T>[]) new Heap<?>[numHeaps];
+    for (int i = 0; i < numHeaps; i++) {
+      heaps[i] = new Heap<T>(comp);
+    }
+
+    seeds = new int[numThreads * CACHE_MULTIPLE];
+    for (int i = 0; i < numThreads; i++) {
+      seeds[getIndex(i)] = i * 0x9E3779B9 + 1;
+    }
+
+    if (needSize)
+      size = new AtomicInteger();
+  }
+
+  @Override
+  public Worklist<T> newInstance() {
+    return new ConcurrentMultiQueue<T>(comp, queuesPerThread, null, size != null);
+  }
+
+  private int getIndex(int tid) {
+    return tid * CACHE_MULTIPLE;
+  }
+
+  private int nextHeap(int tid) {
+    int idx = getIndex(tid);
+    int x = seeds[idx];
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    seeds[idx] = x;
+    return (x & Integer.MAX_VALUE) % heaps.length;
+  }
+
+  @Override
+  public void add(T item, ForeachContext<T> ctx) {
+    int tid = ctx.getThreadId();
+
+    if (size != null)
+      size.incrementAndGet();
+
+    while (true) {
+      Heap<T> heap = heaps[nextHeap(tid)];
+      if (heap.lock.tryLock()) {
+        try {
+          heap.add(item);
+        } finally {
+          heap.lock.unlock();
+        }
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public T poll(ForeachContext<T> ctx) {
+    int tid = ctx.getThreadId();
+    T retval = null;
+
+    for (int attempt = 0; attempt < RANDOM_ATTEMPTS && retval == null; attempt++) {
+      Heap<T> a = heaps[nextHeap(tid)];
+      Heap<T> b = heaps[nextHeap(tid)];
+      T minA = a.min;
+      T minB = b.min;
+      if (minA == null && minB == null) {
+        continue;
+      }
+
+      Heap<T> heap;
+      if (minA == null) {
+        heap = b;
+      } else if (minB == null) {
+        heap = a;
+      } else {
+        heap = comp.compare(minA, minB) <= 0 ? a : b;
+      }
+
+      // a contended heap counts as a miss, pollAny waits for locks if all attempts miss
+      if (heap.lock.tryLock()) {
+        try {
+          retval = heap.poll();
+        } finally {
+          heap.lock.unlock();
+        }
+      }
+    }
+
+    if (retval == null) {
+      retval = pollAny(tid);
+    }
+
+    if (size != null && retval != null)
+      size.decrementAndGet();
+
+    return retval;
+  }
+
+  /**
+   * Polls the first non-empty heap starting from a random one, waiting for locks.
+   */
+  private T pollAny(int tid) {
+    int start = nextHeap(tid);
+    for (int i = 0; i < heaps.length; i++) {
+      Heap<T> heap = heaps[(start + i) % heaps.length];
+      if (heap.min == null) {
+        continue;
+      }
+      heap.lock.lock();
+      try {
+        T retval = heap.poll();
+        if (retval != null) {
+          return retval;
+        }
+      } finally {
+        heap.lock.unlock();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (size != null) {
+      return size.get() == 0;
+    } else {
+      for (Heap<T> heap : heaps) {
+        if (heap.min != null)
+          return false;
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public int size() {
+    if (size != null)
+      return size.get();
+    else
+      throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+
+  private static class Heap<T> {
+    private final ReentrantLock lock;
+    private final PriorityQueue<T> queue;
+    /**
+     * minimum element, null if the heap is empty; read without holding the lock
+     */
+    private volatile T min;
+
+    public Heap(Comparator<T> comp) {
+      lock = new ReentrantLock();
+      queue = new PriorityQueue<T>(16, comp);
+    }
+
+    public void add(T item) {
+      queue.add(item);
+      min = queue.peek();
+    }
+
+    public T poll() {
+      T retval = queue.poll();
+      min = queue.peek();
+      return retval;
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import fn.Lambda;
+import galois.runtime.ForeachContext;
+import galois.runtime.GaloisRuntime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordered-by-integer-metric scheduler. Buckets are kept in a sparse concurrent map from
+ * integers to queues of chunks. Each thread fills a chunk for the bucket it last added to
+ * and consumes a chunk from the bucket it last polled from, and only looks up the map
+ * when the integer changes or a chunk is full or empty.
+ * 
+ * <p>
+ * A global hint bounds the lowest non-empty bucket from below. Threads look for work
+ * starting at the hint, advance it past the empty buckets they find and remove those
+ * buckets from the map. The hint carries a version that is incremented whenever a chunk is
+ * published, so a thread that saw a bucket empty cannot advance the hint past a chunk
+ * published to it in the meantime, and a chunk published to a removed bucket is put back.
+ * </p>
+ *
+ * @param <T>  the type of elements of the worklist
+ */
+@NestedAreSerial
+@MatchingConcurrentVersion(ConcurrentOrderedByIntegerMetric.class)
+@MatchingLeafVersion(ConcurrentOrderedByIntegerMetricLeaf.class)
+class ConcurrentOrderedByIntegerMetric<T> implements Worklist<T> {
+  private final Lambda<T, Integer> indexer;
+  private final int chunkSize;
+  private final Worklist<T> prototype;
+  private final ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Worklist<T>>> buckets;
+  /**
+   * version in the high 32 bits, lowest possibly non-empty integer in the low 32 bits
+   */
+  private final AtomicLong hint;
+  private final ThreadState<T>[] states;
+  private AtomicInteger size;
+
+  public ConcurrentOrderedByIntegerMetric(Lambda<T, Integer> indexer, Maker<T> maker, boolean needSize) {
+    this(indexer, OrderedByIntegerMetric.DEFAULT_CHUNK_SIZE, maker, needSize);
+  }
+
+  public ConcurrentOrderedByIntegerMetric(Lambda<T, Integer> indexer, int chunkSize, Maker<T> maker,
+      boolean needSize) {
+    this(indexer, chunkSize, maker.make(), needSize);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ConcurrentOrderedByIntegerMetric(Lambda<T, Integer> indexer, int chunkSize, Worklist<T> prototype,
+      boolean needSize) {
+    this.indexer = indexer;
+    this.chunkSize = chunkSize;
+    this.prototype = prototype;
+    buckets = new ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Worklist<T>>>();
+    hint = new AtomicLong(makeHint(0, Integer.MAX_VALUE));
+
+    int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
+    states = (ThreadState<T>[]) new ThreadState<?>[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      states[i] = new ThreadState<T>();
+    }
+
+    if (needSize)
+      size = new AtomicInteger();
+  }
+
+  @Override
+  public Worklist<T> newInstance() {
+    return new ConcurrentOrderedByIntegerMetric<T>(indexer, chunkSize, prototype, size != null);
+  }
+
+  private static long makeHint(int version, int index) {
+    return ((long) version << 32) | (index & 0xFFFFFFFFL);
+  }
+
+  private static int getIndex(long hint) {
+    return (int) hint;
+  }
+
+  private ConcurrentLinkedQueue<Worklist<T>> getBucket(int index) {
+    ConcurrentLinkedQueue<Worklist<T>> bucket = buckets.get(index);
+    if (bucket == null) {
+      bucket = new ConcurrentLinkedQueue<Worklist<T>>();
+      ConcurrentLinkedQueue<Worklist<T>> old = buckets.putIfAbsent(index, bucket);
+      if (old != null) {
+        bucket = old;
+      }
+    }
+    return bucket;
+  }
+
+  /**
+   * Makes a chunk visible to other threads.
+   */
+  private void publish(ConcurrentLinkedQueue<Worklist<T>> bucket, int index, Worklist<T> chunk) {
+    bucket.add(chunk);
+    lower(index);
+    if (buckets.get(index) != bucket) {
+      // the bucket was found empty and removed, our cached pointer is stale
+      relink(index, bucket);
+    }
+  }
+
+  /**
+   * Lowers the hint to the given integer if necessary and increments its version.
+   */
+  private void lower(int index) {
+    while (true) {
+      long cur = hint.get();
+      int version = (int) (cur >>> 32) + 1;
+      long next = makeHint(version, Math.min(getIndex(cur), index));
+      if (hint.compareAndSet(cur, next)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Puts a removed bucket back into the map, or moves its chunks to the bucket that
+   * replaced it.
+   */
+  private void relink(int index, ConcurrentLinkedQueue<Worklist<T>> bucket) {
+    ConcurrentLinkedQueue<Worklist<T>> old = buckets.putIfAbsent(index, bucket);
+    if (old != null && old != bucket) {
+      Worklist<T> chunk;
+      while ((chunk = bucket.poll()) != null) {
+        old.add(chunk);
+      }
+    }
+    lower(index);
+  }
+
+  /**
+   * Removes the empty buckets in [from, to) after the hint was advanced past them.
+   * 
+   * @param expected  the advanced hint
+   */
+  private void removeEmpty(int from, int to, long expected) {
+    for (Map.Entry<Integer, ConcurrentLinkedQueue<Worklist<T>>> entry : buckets.subMap(from, true, to, false)
+        .entrySet()) {
+      ConcurrentLinkedQueue<Worklist<T>> bucket = entry.getValue();
+      if (bucket.isEmpty() && buckets.remove(entry.getKey(), bucket) && hint.get() != expected) {
+        // a chunk may have been published to the bucket in the meantime
+        relink(entry.getKey(), bucket);
+      }
+    }
+  }
+
+  private void flush(ThreadState<T> state) {
+    if (state.addChunk != null && !state.addChunk.isEmpty()) {
+      publish(state.addBucket, state.addIndex, state.addChunk);
+      state.addChunk = null;
+    }
+  }
+
+  @Override
+  public void add(T item, ForeachContext<T> ctx) {
+    ThreadState<T> state = states[ctx.getThreadId()];
+    int index = indexer.call(item);
+
+    if (size != null)
+      size.incrementAndGet();
+
+    if (state.addBucket == null || state.addIndex != index) {
+      flush(state);
+      state.addBucket = getBucket(index);
+      state.addIndex = index;
+    }
+    if (state.addChunk == null) {
+      state.addChunk = prototype.newInstance();
+    }
+
+    state.addChunk.add(item, ctx);
+    if (state.addChunk.size() >= chunkSize) {
+      flush(state);
+    }
+  }
+
+  @Override
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public T poll(ForeachContext<T> ctx) {
+    ThreadState<T> state = states[ctx.getThreadId()];
+    T retval = null;
+
+    if (state.pollChunk != null && state.pollIndex <= getIndex(hint.get())) {
+      retval = state.pollChunk.poll(ctx);
+    }
+
+    if (retval == null) {
+      if (state.pollChunk != null && !state.pollChunk.isEmpty()) {
+        // better work elsewhere, give the rest of the chunk back
+        publish(state.pollBucket, state.pollIndex, state.pollChunk);
+      }
+      state.pollChunk = null;
+      // make own elements visible to the search
+      flush(state);
+      retval = pollBuckets(state, ctx);
+    }
+
+    if (size != null && retval != null)
+      size.decrementAndGet();
+
+    return retval;
+  }
+
+  private T pollBuckets(ThreadState<T> state, ForeachContext<T> ctx) {
+    long cur = hint.get();
+    boolean advance = true;
+
+    for (Map.Entry<Integer, ConcurrentLinkedQueue<Worklist<T>>> entry : buckets.tailMap(getIndex(cur), true)
+        .entrySet()) {
+      ConcurrentLinkedQueue<Worklist<T>> bucket = entry.getValue();
+      int index = entry.getKey();
+
+      Worklist<T> chunk;
+      while ((chunk = bucket.poll()) != null) {
+        T retval = chunk.poll(ctx);
+        if (retval == null) {
+          continue;
+        }
+
+        if (advance && index != getIndex(cur)) {
+          // all buckets before this one were empty
+          long next = makeHint((int) (cur >>> 32), index);
+          if (hint.compareAndSet(cur, next)) {
+            removeEmpty(getIndex(cur), index, next);
+          }
+        }
+        state.pollChunk = chunk;
+        state.pollBucket = bucket;
+        state.pollIndex = index;
+        return retval;
+      }
+
+      if (advance && cur != hint.get()) {
+        // somebody published a chunk, it may be before this bucket
+        advance = false;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public int size() {
+    if (size != null)
+      return size.get();
+    else
+      throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (size != null) {
+      return size.get() == 0;
+    } else {
+      for (ConcurrentLinkedQueue<Worklist<T>> bucket : buckets.tailMap(getIndex(hint.get()), true).values()) {
+        if (!bucket.isEmpty())
+          return false;
+      }
+      // elements not published yet
+      for (ThreadState<T> state : states) {
+        Worklist<T> addChunk = state.addChunk;
+        Worklist<T> pollChunk = state.pollChunk;
+        if ((addChunk != null && !addChunk.isEmpty()) || (pollChunk != null && !pollChunk.isEmpty()))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public void finishAddInitial() {
+    // initial elements are added serially, publish them so that every thread can take them
+    for (ThreadState<T> state : states) {
+      flush(state);
+    }
+  }
+
+  /**
+   * Chunks and cached bucket pointers of a thread
+   */
+  private static class ThreadState<T> {
+    private ConcurrentLinkedQueue<Worklist<T>> addBucket;
+    private int addIndex;
+    private Worklist<T> addChunk;
+    private ConcurrentLinkedQueue<Worklist<T>> pollBucket;
+    private int pollIndex;
+    private Worklist<T> pollChunk;
+  }
+}
@@ -0,0 +1,328 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.ForeachContext;
+import galois.runtime.GaloisRuntime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Work-stealing order. Every thread owns a Chase-Lev deque of full chunks: the owner pushes and
+ * pops chunks at the bottom without synchronization in the common case, and other threads steal
+ * chunks from the top with a single CAS.
+ * 
+ * <p>
+ * Victims are chosen at random, first among the threads on the socket of the thief (see
+ * {@link ForeachContext#getSocketId()}) and then among all threads. Subclasses can change the
+ * order in which victims are tried by overriding {@link #steal(int, int)}.
+ * </p>
+ *
+ * @param <T>  the type of elements of the worklist
+ */
+@NestedAreSerial
+@MatchingConcurrentVersion(ConcurrentWorkStealing.class)
+@MatchingLeafVersion(ConcurrentWorkStealingLeaf.class)
+class ConcurrentWorkStealing<T> implements Worklist<T> {
+  private static final int INITIAL_DEQUE_SIZE = 64;
+
+  private final int chunkSize;
+  private final Worklist<T> prototype;
+  private final Deque<T>[] deques;
+  /**
+   * drained chunks, reused instead of allocating a new chunk whenever one fills
+   */
+  private final ChunkPool<Worklist<T>> free;
+  private AtomicInteger size;
+
+  public ConcurrentWorkStealing(Maker<T> maker, boolean needSize) {
+    this(ChunkedLIFO.DEFAULT_CHUNK_SIZE, maker, needSize);
+  }
+
+  public ConcurrentWorkStealing(int chunkSize, Maker<T> maker, boolean needSize) {
+    this(chunkSize, maker.make(), GaloisRuntime.getRuntime().getMaxThreads(), needSize);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ConcurrentWorkStealing(int chunkSize, Worklist<T> prototype, int numThreads, boolean needSize) {
+    this.chunkSize = chunkSize;
+    this.prototype = prototype;
+    deques = (Deque<T>[]) new Deque<?>[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      deques[i] = new Deque<T>(prototype.newInstance(), i);
+    }
+    free = new ChunkPool<Worklist<T>>();
+
+    if (needSize)
+      size = new AtomicInteger();
+  }
+
+  @Override
+  public Worklist<T> newInstance() {
+    return new ConcurrentWorkStealing<T>(chunkSize, prototype, deques.length, size != null);
+  }
+
+  @Override
+  public void add(T item, ForeachContext<T> ctx) {
+    int tid = ctx.getThreadId();
+    Deque<T> d = deques[tid];
+    int socket = ctx.getSocketId();
+    if (d.socket != socket) {
+      d.socket = socket;
+    }
+
+    if (size != null)
+      size.incrementAndGet();
+
+    Worklist<T> c = d.current;
+    if (c == null) {
+      c = d.current = newChunk(tid);
+    }
+    c.add(item, ctx);
+
+    if (c.size() >= chunkSize) {
+      d.push(c);
+      d.current = newChunk(tid);
+    }
+  }
+
+  private Worklist<T> newChunk(int tid) {
+    Worklist<T> chunk = free.get(tid);
+    return chunk != null ? chunk : prototype.newInstance();
+  }
+
+  @Override
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public T poll(ForeachContext<T> ctx) {
+    int tid = ctx.getThreadId();
+    Deque<T> d = deques[tid];
+
+    T retval = null;
+    while (true) {
+      if (d.current != null) {
+        retval = d.current.poll(ctx);
+        if (retval != null) {
+          break;
+        }
+      }
+
+      Worklist<T> next = d.pop();
+      if (next == null) {
+        next = steal(tid, ctx.getSocketId());
+        if (next == null) {
+          break;
+        }
+      }
+      if (d.current != null) {
+        // drained and only reachable by the owner
+        free.put(tid, d.current);
+      }
+      d.current = next;
+    }
+
+    if (size != null && retval != null)
+      size.decrementAndGet();
+
+    return retval;
+  }
+
+  /**
+   * Steals a chunk for the given thread.
+   * 
+   * @param tid     the id of the thief
+   * @param socket  the socket of the thief
+   * @return  a chunk or null if no chunk could be stolen
+   */
+  protected Worklist<T> steal(int tid, int socket) {
+    int numThreads = deques.length;
+    if (numThreads == 1) {
+      return null;
+    }
+
+    Deque<T> self = deques[tid];
+    int start = self.nextRandom(numThreads);
+    // threads on the same socket first
+    for (int i = 0; i < numThreads; i++) {
+      Deque<T> victim = deques[(start + i) % numThreads];
+      if (victim != self && victim.socket == socket) {
+        Worklist<T> retval = victim.steal();
+        if (retval != null) {
+          return retval;
+        }
+      }
+    }
+    for (int i = 0; i < numThreads; i++) {
+      Deque<T> victim = deques[(start + i) % numThreads];
+      if (victim != self && victim.socket != socket) {
+        Worklist<T> retval = victim.steal();
+        if (retval != null) {
+          return retval;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (size != null) {
+      return size.get() == 0;
+    } else {
+      for (Deque<T> d : deques) {
+        if (!d.isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public int size() {
+    if (size != null)
+      return size.get();
+    else
+      throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+
+  /**
+   * Chase-Lev deque of chunks. Only the owner calls {@link #push(Worklist)} and {@link #pop()};
+   * any thread may call {@link #steal()}.
+   */
+  private static class Deque<T> {
+    private final AtomicLong top;
+    private volatile long bottom;
+    private volatile AtomicReferenceArray<Worklist<T>> array;
+    /**
+     * chunk the owner currently adds to and polls from
+     */
+    private Worklist<T> current;
+    /**
+     * socket of the owner, -1 until the owner first adds
+     */
+    private volatile int socket;
+    private int seed;
+
+    public Deque(Worklist<T> current, int tid) {
+      this.current = current;
+      top = new AtomicLong();
+      array = new AtomicReferenceArray<Worklist<T>>(INITIAL_DEQUE_SIZE);
+      socket = -1;
+      seed = tid * 0x9E3779B9 + 1;
+    }
+
+    public void push(Worklist<T> wl) {
+      long b = bottom;
+      long t = top.get();
+      AtomicReferenceArray<Worklist<T>> a = array;
+      if (b - t >= a.length() - 1) {
+        a = grow(a, t, b);
+      }
+      a.set((int) (b & (a.length() - 1)), wl);
+      bottom = b + 1;
+    }
+
+    public Worklist<T> pop() {
+      long b = bottom - 1;
+      AtomicReferenceArray<Worklist<T>> a = array;
+      bottom = b;
+      long t = top.get();
+      if (b < t) {
+        // empty
+        bottom = b + 1;
+        return null;
+      }
+
+      int index = (int) (b & (a.length() - 1));
+      Worklist<T> retval = a.get(index);
+      if (b > t) {
+        a.set(index, null);
+        return retval;
+      }
+
+      // last element, race with thieves
+      if (!top.compareAndSet(t, t + 1)) {
+        retval = null;
+      } else {
+        a.set(index, null);
+      }
+      bottom = t + 1;
+      return retval;
+    }
+
+    public Worklist<T> steal() {
+      long t = top.get();
+      long b = bottom;
+      if (t >= b) {
+        return null;
+      }
+
+      AtomicReferenceArray<Worklist<T>> a = array;
+      Worklist<T> retval = a.get((int) (t & (a.length() - 1)));
+      if (retval == null || !top.compareAndSet(t, t + 1)) {
+        // lost the race with the owner or another thief
+        return null;
+      }
+      return retval;
+    }
+
+    public boolean isEmpty() {
+      return top.get() >= bottom;
+    }
+
+    private AtomicReferenceArray<Worklist<T>> grow(AtomicReferenceArray<Worklist<T>> a, long t, long b) {
+      int length = a.length();
+      AtomicReferenceArray<Worklist<T>> retval = new AtomicReferenceArray<Worklist<T>>(length * 2);
+      for (long i = t; i < b; i++) {
+        retval.set((int) (i & (length * 2 - 1)), a.get((int) (i & (length - 1))));
+      }
+      array = retval;
+      return retval;
+    }
+
+    /**
+     * @return  a pseudo-random number between 0 and n - 1
+     */
+    public int nextRandom(int n) {
+      int x = seed;
+      x ^= x << 13;
+      x ^= x >>> 17;
+      x ^= x << 5;
+      seed = x;
+      return (x & Integer.MAX_VALUE) % n;
+    }
+  }
+}
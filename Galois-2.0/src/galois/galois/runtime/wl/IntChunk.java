@@ -0,0 +1,87 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+/**
+ * Fixed-capacity ring buffer of integers used as the chunks of int worklists. Elements
+ * can be removed from either end, so the same chunk serves FIFO and LIFO orders. Not
+ * thread-safe.
+ */
+final class IntChunk {
+  private final int[] buffer;
+  private int head;
+  private int size;
+
+  public IntChunk(int capacity) {
+    buffer = new int[capacity];
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size == buffer.length;
+  }
+
+  /**
+   * Adds an element at the tail. The chunk must not be full.
+   */
+  public void add(int item) {
+    int idx = head + size;
+    if (idx >= buffer.length)
+      idx -= buffer.length;
+    buffer[idx] = item;
+    size++;
+  }
+
+  /**
+   * @return  the element at the head or {@link IntWorklist#EMPTY} if the chunk is empty
+   */
+  public int pollFirst() {
+    if (size == 0)
+      return IntWorklist.EMPTY;
+
+    int retval = buffer[head];
+    if (++head == buffer.length)
+      head = 0;
+    size--;
+    return retval;
+  }
+
+  /**
+   * @return  the element at the tail or {@link IntWorklist#EMPTY} if the chunk is empty
+   */
+  public int pollLast() {
+    if (size == 0)
+      return IntWorklist.EMPTY;
+
+    size--;
+    int idx = head + size;
+    if (idx >= buffer.length)
+      idx -= buffer.length;
+    return buffer[idx];
+  }
+}
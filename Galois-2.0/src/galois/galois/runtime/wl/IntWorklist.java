@@ -0,0 +1,87 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.IntForeachContext;
+
+/**
+ * Worklist of non-negative integers used by Galois iterators over integers. Elements
+ * are kept in <code>int</code> arrays rather than as objects. Like {@link Worklist},
+ * int worklists are not intended to be instantiated directly but rather by passing an
+ * ordering rule to the iterator; rules that support integers are annotated with
+ * {@link MatchingIntVersion}.
+ * 
+ *
+ * @see Priority#makeInt(Priority.Rule)
+ * @see galois.runtime.GaloisRuntime#foreach(int[], fn.IntLambda2Void, Priority.Rule)
+ */
+public interface IntWorklist {
+  /**
+   * Returned by {@link #poll(IntForeachContext)} when there are no more elements
+   */
+  public static final int EMPTY = -1;
+
+  /**
+   * Adds an element to this worklist. This method is used when adding elements
+   * from the initial elements passed to an executor. Thread-safe.
+   * 
+   * @param item  the item to add
+   * @param ctx   an executor context
+   */
+  public void addInitial(int item, IntForeachContext ctx);
+
+  /**
+   * Marks when no more elements will be added from the initial elements
+   * passed to an executor.
+   */
+  public void finishAddInitial();
+
+  /**
+   * Adds an element to this worklist. This method is used for newly generated
+   * elements or elements added during Galois execution. Thread-safe.
+   * 
+   * @param item  the item to add
+   * @param ctx   an executor context
+   */
+  public void add(int item, IntForeachContext ctx);
+
+  /**
+   * Removes an element from this worklist. Thread-safe.
+   * 
+   * @param ctx   an executor context
+   * @return      an element or {@link #EMPTY} if there are no more elements in this
+   *              worklist
+   */
+  public int poll(IntForeachContext ctx);
+
+  /**
+   * Checks for emptiness. Only called by one thread at
+   * a time so does not have to be thread-safe. Also,
+   * can assume that all threads have had {@link #poll(IntForeachContext)} return
+   * {@link #EMPTY}.
+   * @return  true if there are no more elements in this worklist
+   */
+  public boolean isEmpty();
+}
@@ -32,29 +32,37 @@ import galois.runtime.GaloisRuntime;
  * The thread-local worklist is polled from and added to first. Only when the local 
  * worklist is empty is the global worklist examined for {@link #poll(ForeachContext)}.
  * {@link #add(Object, ForeachContext)} always goes to the local worklist.
+ * The global worklist is split by socket: initial elements are dealt out to the
+ * sockets and a thread only takes elements of other sockets when its own are exhausted.
  * 
  *
  * @param <T>  the type of elements of the worklist
  */
 class LocalWorklist<T> implements Worklist<T> {
-  private Worklist<T> outer;
+  private Worklist<T>[] outer;
   private Worklist<T>[] inner;
+  private int nextSocket;
 
   /**
    * Creates a worklist from a local and global worklist.
    * 
    * @param outerMaker  maker for global worklist
    * @param innerMaker  maker for local worklist
+   * @param numSockets  number of parts to split the global worklist into, 1 for serial worklists
    */
   @SuppressWarnings("unchecked")
-  public LocalWorklist(Maker<T> outerMaker, Maker<T> innerMaker) {
+  public LocalWorklist(Maker<T> outerMaker, Maker<T> innerMaker, int numSockets) {
     int numThreads = GaloisRuntime.getRuntime().getMaxThreads();
 
-    inner = new Worklist[numThreads];
+    inner = (Worklist<T>[]) new Worklist<?>[numThreads];
     for (int i = 0; i < numThreads; i++) {
       inner[i] = innerMaker.make();
     }
-    this.outer = outerMaker.make();
+
+    outer = (Worklist<T>[]) new Worklist<?>[numSockets];
+    for (int i = 0; i < numSockets; i++) {
+      outer[i] = outerMaker.make();
+    }
   }
 
   public Worklist<T> newInstance() {
@@ -68,20 +76,28 @@ class LocalWorklist<T> implements Worklist<T> {
 
   @Override
   public void addInitial(T item, ForeachContext<T> ctx) {
-    outer.add(item, ctx);
+    // initial elements are added serially
+    outer[nextSocket].add(item, ctx);
+    nextSocket = (nextSocket + 1) % outer.length;
   }
 
   @Override
   public boolean isEmpty() {
-    return outer.isEmpty();
+    for (int i = 0; i < outer.length; i++) {
+      if (!outer[i].isEmpty())
+        return false;
+    }
+    return true;
   }
 
   @Override
   public T poll(ForeachContext<T> ctx) {
     T retval = inner[ctx.getThreadId()].poll(ctx);
 
-    if (retval == null)
-      retval = outer.poll(ctx);
+    int socket = ctx.getSocketId();
+    for (int i = 0; retval == null && i < outer.length; i++) {
+      retval = outer[(socket + i) % outer.length].poll(ctx);
+    }
 
     return retval;
   }
@@ -93,6 +109,8 @@ class LocalWorklist<T> implements Worklist<T> {
 
   @Override
   public void finishAddInitial() {
-    outer.finishAddInitial();
+    for (int i = 0; i < outer.length; i++) {
+      outer[i].finishAddInitial();
+    }
   }
 }
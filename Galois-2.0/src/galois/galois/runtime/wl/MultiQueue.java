@@ -0,0 +1,114 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import galois.runtime.ForeachContext;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Order elements approximately according to user-defined comparison function. This
+ * rule is rank-relaxed: concurrently, elements are spread over <i>c</i> times the number
+ * of threads independent priority queues, and a thread polls the better of the minimum
+ * elements of two randomly chosen queues. Elements therefore come out close to, but not
+ * exactly in, comparison order, and the order of equal elements is unspecified.
+ * 
+ * <p>
+ * Use this rule for unordered iterators that benefit from processing elements roughly
+ * by priority, e.g., to reduce wasted work, but do not require exact order. It scales
+ * much better than {@link Ordered}, which must be used when order is required for
+ * correctness; {@link Priority#makeOrdered(Priority.Rule)} rejects this rule.
+ * Serially, elements come out in exact comparison order.
+ * </p>
+ *
+ * @param <T>  the type of elements of the worklist
+ * @see Ordered
+ */
+@OnlyLeaf
+@MatchingConcurrentVersion(ConcurrentMultiQueue.class)
+@MatchingLeafVersion(MultiQueue.class)
+public class MultiQueue<T> implements Worklist<T> {
+  public static final int DEFAULT_QUEUES_PER_THREAD = 2;
+
+  private final PriorityQueue<T> queue;
+  private final Comparator<T> comp;
+
+  /**
+   * Creates the rule using the given comparator and the default number of queues per
+   * thread ({@value #DEFAULT_QUEUES_PER_THREAD})
+   * 
+   * @param comp      function that orders elements
+   */
+  public MultiQueue(Comparator<T> comp, Maker<T> maker, boolean needSize) {
+    this(comp, DEFAULT_QUEUES_PER_THREAD, maker, needSize);
+  }
+
+  /**
+   * Creates the rule using the given comparator and number of queues per thread
+   * 
+   * @param comp             function that orders elements
+   * @param queuesPerThread  number of queues per thread in concurrent versions of this rule
+   */
+  public MultiQueue(Comparator<T> comp, int queuesPerThread, Maker<T> maker, boolean needSize) {
+    this.comp = comp;
+    queue = new PriorityQueue<T>(111, comp);
+  }
+
+  @Override
+  public Worklist<T> newInstance() {
+    return new MultiQueue<T>(comp, null, false);
+  }
+
+  @Override
+  public void add(T item, ForeachContext<T> ctx) {
+    queue.add(item);
+  }
+
+  @Override
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public T poll(ForeachContext<T> ctx) {
+    return queue.poll();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return queue.size();
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+}
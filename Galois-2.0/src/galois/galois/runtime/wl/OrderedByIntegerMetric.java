@@ -0,0 +1,158 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+import fn.Lambda;
+import galois.runtime.ForeachContext;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Order elements according to function mapping elements to integers. Elements are
+ * ordered in ascending integer order. Elements with equal integers are unordered with
+ * respect to each other and are eligible to be ordered by subsequent rules.
+ * 
+ * <p>
+ * In contrast to {@link Bucketed}, the integers may be any <code>int</code> values and
+ * need not be known in advance; a bucket is only kept for integers that currently have
+ * elements. Each bucket keeps its elements in chunks of size <i>N</i>, in FIFO order, and
+ * concurrently threads only synchronize on the bucket map when they move to a different
+ * integer or a chunk fills up or runs empty.
+ * Descending orders can be expressed by negating the integers.
+ * </p>
+ *
+ * @param <T>  the type of elements of the worklist
+ * @see Bucketed
+ */
+@NestedAreSerial
+@MatchingConcurrentVersion(ConcurrentOrderedByIntegerMetric.class)
+@MatchingLeafVersion(OrderedByIntegerMetricLeaf.class)
+public class OrderedByIntegerMetric<T> implements Worklist<T> {
+  public static final int DEFAULT_CHUNK_SIZE = 32;
+
+  private final Lambda<T, Integer> indexer;
+  private final int chunkSize;
+  private final Worklist<T> prototype;
+  private final TreeMap<Integer, ArrayDeque<Worklist<T>>> buckets;
+  private int size;
+
+  /**
+   * Creates an ascending order with the default chunk size ({@value #DEFAULT_CHUNK_SIZE})
+   * 
+   * @param indexer     function mapping elements to integers
+   */
+  public OrderedByIntegerMetric(Lambda<T, Integer> indexer, Maker<T> maker, boolean needSize) {
+    this(indexer, DEFAULT_CHUNK_SIZE, maker, needSize);
+  }
+
+  /**
+   * Creates an ascending order with the given chunk size
+   * 
+   * @param indexer     function mapping elements to integers
+   * @param chunkSize   chunk size to use
+   */
+  public OrderedByIntegerMetric(Lambda<T, Integer> indexer, int chunkSize, Maker<T> maker, boolean needSize) {
+    this(indexer, chunkSize, maker.make());
+  }
+
+  private OrderedByIntegerMetric(Lambda<T, Integer> indexer, int chunkSize, Worklist<T> prototype) {
+    this.indexer = indexer;
+    this.chunkSize = chunkSize;
+    this.prototype = prototype;
+    buckets = new TreeMap<Integer, ArrayDeque<Worklist<T>>>();
+  }
+
+  @Override
+  public Worklist<T> newInstance() {
+    return new OrderedByIntegerMetric<T>(indexer, chunkSize, prototype.newInstance());
+  }
+
+  @Override
+  public void add(T item, ForeachContext<T> ctx) {
+    Integer index = indexer.call(item);
+    ArrayDeque<Worklist<T>> bucket = buckets.get(index);
+    if (bucket == null) {
+      bucket = new ArrayDeque<Worklist<T>>();
+      buckets.put(index, bucket);
+    }
+
+    Worklist<T> chunk = bucket.peekLast();
+    if (chunk == null || chunk.size() >= chunkSize) {
+      chunk = prototype.newInstance();
+      bucket.addLast(chunk);
+    }
+
+    size++;
+    chunk.add(item, ctx);
+  }
+
+  @Override
+  public void addInitial(T item, ForeachContext<T> ctx) {
+    add(item, ctx);
+  }
+
+  @Override
+  public T poll(ForeachContext<T> ctx) {
+    Map.Entry<Integer, ArrayDeque<Worklist<T>>> entry;
+    T retval = null;
+
+    while ((entry = buckets.firstEntry()) != null) {
+      ArrayDeque<Worklist<T>> bucket = entry.getValue();
+      Worklist<T> chunk;
+      while ((chunk = bucket.peekFirst()) != null && (retval = chunk.poll(ctx)) == null) {
+        bucket.pollFirst();
+      }
+
+      if (retval == null) {
+        buckets.remove(entry.getKey());
+      } else {
+        break;
+      }
+    }
+
+    if (retval != null) {
+      size--;
+    }
+
+    return retval;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void finishAddInitial() {
+
+  }
+}
@@ -24,6 +24,9 @@ kind.
 
 package galois.runtime.wl;
 
+import galois.runtime.ContentionManager;
+import galois.runtime.GaloisRuntime;
+
 import java.lang.reflect.Constructor;
 import java.util.Arrays;
 
@@ -105,7 +108,8 @@ public class Priority {
       Maker<T> outerMaker = first.gen();
       Maker<T> innerMaker = local.gen();
 
-      return new LocalWorklist<T>(outerMaker, innerMaker);
+      int numSockets = isSerial ? 1 : GaloisRuntime.getRuntime().getNumSockets();
+      return new LocalWorklist<T>(outerMaker, innerMaker, numSockets);
     } else {
       return (Worklist<T>) first.gen().make();
     }
@@ -150,6 +154,41 @@ public class Priority {
     }
   }
 
+  /**
+   * Creates a worklist of integers from the ordering specification for a Galois iterator over
+   * integers. The ordering specification must consist of a single rule that has an int
+   * version (see {@link MatchingIntVersion}); the arguments of the rule are passed to the
+   * int version unchanged.
+   * 
+   * @param rule  the ordering specification
+   * @return      a worklist matching the specification
+   */
+  public static IntWorklist makeInt(Rule rule) {
+    Pair<Rule, Rule> result = rule.findFirstAndLocal();
+    Rule first = result.getFirst();
+
+    if (first.rule == null || result.getSecond() != null || first.next.rule != null) {
+      throw new Error("Iterators over integers only support orders with a single rule: " + first);
+    }
+
+    MatchingIntVersion version = first.rule.getAnnotation(MatchingIntVersion.class);
+    if (version == null) {
+      throw new Error("Rule has no int version: " + first.rule);
+    }
+
+    Object[] args = first.args;
+    for (Constructor<?> c : version.value().getConstructors()) {
+      if (c.getParameterTypes().length == args.length) {
+        try {
+          return (IntWorklist) c.newInstance(args);
+        } catch (Exception e) {
+          throw new Error(e);
+        }
+      }
+    }
+    throw new Error("Couldn't find matching constructor for " + version.value() + " with " + args.length + " args ");
+  }
+
   /**
    * Creates a worklist from the ordering specification for an ordered Galois iterator for use
    * in ParaMeter.
@@ -176,6 +215,43 @@ public class Priority {
     return new ParameterUnorderedWorklist<T>();
   }
 
+  /**
+   * Creates the contention manager given to the ordering specification with
+   * {@link Priority.Rule#withContentionManager(Class, Object...)}.
+   * 
+   * @param rule  the ordering specification
+   * @return      a new contention manager or null if the specification does not include one
+   */
+  public static ContentionManager makeContentionManager(Rule rule) {
+    Class<? extends ContentionManager> cm = rule.contentionManager;
+    if (cm == null) {
+      return null;
+    }
+
+    Object[] args = rule.contentionManagerArgs;
+    for (Constructor<?> c : cm.getConstructors()) {
+      if (c.getParameterTypes().length == args.length) {
+        try {
+          return (ContentionManager) c.newInstance(args);
+        } catch (Exception e) {
+          throw new Error(e);
+        }
+      }
+    }
+    throw new Error("Couldn't find matching constructor for " + cm + " with " + args.length + " args ");
+  }
+
+  /**
+   * Returns the lock coalescing policy given to the ordering specification with
+   * {@link Priority.Rule#withLockCoalescing(int)}.
+   * 
+   * @param rule  the ordering specification
+   * @return      the number of commits locks are kept for or -1 if the specification does not include one
+   */
+  public static int getLockCoalescing(Rule rule) {
+    return rule.lockCoalescing;
+  }
+
   /**
    * An ordering specification. An ordering specification consists of two parts:
    * a global order and a local order. An order is a sequence of rules chained
@@ -194,6 +270,9 @@ public class Priority {
     private Object[] args;
     private boolean needSize;
     private boolean isLocalRule;
+    private Class<? extends ContentionManager> contentionManager;
+    private Object[] contentionManagerArgs;
+    private int lockCoalescing = -1;
 
     private Rule() {
       args = emptyArgs;
@@ -223,9 +302,51 @@ public class Priority {
       this.args = args;
       next = new Rule();
       next.prev = this;
+      next.contentionManager = contentionManager;
+      next.contentionManagerArgs = contentionManagerArgs;
+      next.lockCoalescing = lockCoalescing;
       return next;
     }
 
+    /**
+     * Selects the contention manager used by unordered Galois iterators with this
+     * ordering specification. The arguments follow the same convention as the
+     * arguments of {@link #then(Class, Object...)} except that there are no hidden
+     * arguments.
+     * 
+     * @param cm    the contention manager
+     * @param args  the arguments to the contention manager if any
+     * @return      a reference to the updated order
+     * @see galois.runtime.ContentionManager
+     */
+    public Rule withContentionManager(Class<? extends ContentionManager> cm, Object... args) {
+      for (Rule r = this; r != null; r = r.prev) {
+        r.contentionManager = cm;
+        r.contentionManagerArgs = args;
+      }
+      return this;
+    }
+
+    /**
+     * Lets each thread of an unordered Galois iterator with this ordering specification
+     * keep the abstract locks acquired by its iterations for up to <code>commits</code>
+     * consecutive commits, or until another thread requests one of them. This saves
+     * reacquiring locks when a thread repeatedly works on the same objects, e.g., with
+     * a local LIFO order. A value of 0 releases locks on every commit.
+     * 
+     * @param commits  the number of commits to keep locks for
+     * @return         a reference to the updated order
+     */
+    public Rule withLockCoalescing(int commits) {
+      if (commits < 0) {
+        throw new IllegalArgumentException("commits must be non-negative");
+      }
+      for (Rule r = this; r != null; r = r.prev) {
+        r.lockCoalescing = commits;
+      }
+      return this;
+    }
+
     /**
      * Appends a rule, marks the rule and all subsequent rules as belonging to the local order.
      * 
@@ -301,13 +422,19 @@ public class Priority {
 
     private void updateBounded() {
       // Make inner chunked rules use appropriate bounds
-      if (prev != null && (prev.rule == ChunkedFIFO.class || prev.rule == ChunkedLIFO.class)) {
+      if (prev != null && (prev.rule == ChunkedFIFO.class || prev.rule == ChunkedLIFO.class
+          || prev.rule == WorkStealing.class || prev.rule == OrderedByIntegerMetric.class)) {
+        Object[] chunkArgs = prev.args;
+        if (prev.rule == OrderedByIntegerMetric.class) {
+          // chunk size follows the indexer
+          chunkArgs = prev.args.length > 1 ? new Object[] { prev.args[1] } : new Object[0];
+        }
         if (rule == FIFO.class || rule == BoundedFIFO.class) {
           rule = BoundedFIFO.class;
-          args = prev.args;
+          args = chunkArgs;
         } else if (rule == LIFO.class || rule == BoundedLIFO.class) {
           rule = BoundedLIFO.class;
-          args = prev.args;
+          args = chunkArgs;
         }
       }
 
@@ -0,0 +1,59 @@
+/*
+Galois, a framework to exploit amorphous data-parallelism in irregular
+programs.
+
+Copyright (C) 2010, The University of Texas at Austin. All rights reserved.
+UNIVERSITY EXPRESSLY DISCLAIMS ANY AND ALL WARRANTIES CONCERNING THIS SOFTWARE
+AND DOCUMENTATION, INCLUDING ANY WARRANTIES OF MERCHANTABILITY, FITNESS FOR ANY
+PARTICULAR PURPOSE, NON-INFRINGEMENT AND WARRANTIES OF PERFORMANCE, AND ANY
+WARRANTY THAT MIGHT OTHERWISE ARISE FROM COURSE OF DEALING OR USAGE OF TRADE.
+NO WARRANTY IS EITHER EXPRESS OR IMPLIED WITH RESPECT TO THE USE OF THE
+SOFTWARE OR DOCUMENTATION. Under no circumstances shall University be liable
+for incidental, special, indirect, direct or consequential damages or loss of
+profits, interruption of business, or related expenses which may arise from use
+of Software or Documentation, including but not limited to those resulting from
+defects in Software and/or Documentation, or loss or inaccuracy of data of any
+kind.
+
+
+*/
+
+
+
+
+
+package galois.runtime.wl;
+
+/**
+ * Order elements in chunks of size <i>N</i>. Each thread keeps its own deque of full chunks and
+ * takes chunks from it in LIFO order; a thread that runs out of chunks steals the oldest chunk
+ * from the deque of another thread, preferring threads on the same socket. Elements are unordered
+ * within a chunk and are eligible to be ordered by subsequent rules.
+ * 
+ * <p>
+ * Serially, this order is the same as {@link ChunkedLIFO}.
+ * </p>
+ *
+ * @param <T>  the type of elements of the worklist
+ * @see ChunkedLIFO
+ */
+@NestedAreSerial
+@MatchingConcurrentVersion(ConcurrentWorkStealing.class)
+@MatchingLeafVersion(WorkStealingLeaf.class)
+public class WorkStealing<T> extends ChunkedLIFO<T> {
+  /**
+   * Creates a work-stealing order with the default chunk size ({@value ChunkedLIFO#DEFAULT_CHUNK_SIZE})
+   */
+  public WorkStealing(Maker<T> maker, boolean needSize) {
+    this(DEFAULT_CHUNK_SIZE, maker, needSize);
+  }
+
+  /**
+   * Creates a work-stealing order with the given chunk size
+   * 
+   * @param chunkSize        chunk size to use
+   */
+  public WorkStealing(int chunkSize, Maker<T> maker, boolean needSize) {
+    super(chunkSize, maker, needSize);
+  }
+}
@@ -61,6 +61,26 @@ public class CPUFunctions {
       return -1;
   }
 
+  private static native int _setAffinity(int cpu);
+
+  /**
+   * Binds the currently executing thread to the given cpu.
+   * 
+   * @param cpu  the operating system number of the cpu
+   * @return     true if the thread was bound, false if the JNI library was not loaded
+   *   or does not support binding
+   */
+  public static boolean setAffinity(int cpu) {
+    if (!loaded)
+      return false;
+    try {
+      return _setAffinity(cpu) == 0;
+    } catch (UnsatisfiedLinkError e) {
+      // Older builds of the library only provide _getCpuId
+      return false;
+    }
+  }
+
   public static void main(String[] args) {
     System.out.println(getCpuId());
   }
@@ -26,6 +26,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -40,26 +41,45 @@ import java.util.Map;
  */
 public class StackSampler extends Sampler {
   private final Deque<Map<Thread, StackTraceElement[]>> samples;
+  private final Deque<String> sampleLabels;
 
   /**
    * Only include stack traces that contain this method name.
    */
   public static final String includeMethodName = "__stackSamplerRecordMe";
 
+  private static volatile String label;
+
   protected StackSampler(int intervalMillis) {
     super(intervalMillis);
 
     samples = new ArrayDeque<Map<Thread, StackTraceElement[]>>();
+    sampleLabels = new ArrayDeque<String>();
+  }
+
+  /**
+   * Sets the label attached to subsequent samples, e.g., the name of the
+   * currently executing loop.
+   * 
+   * @param label  the label or null for no label
+   */
+  public static void setLabel(String label) {
+    StackSampler.label = label;
   }
 
   @Override
   protected void sample() {
+    sampleLabels.add(String.valueOf(label));
     samples.add(Thread.getAllStackTraces());
   }
 
-  private Map<Thread, List<StackTraceElement[]>> getSamples() {
-    Map<Thread, List<StackTraceElement[]>> retval = new HashMap<Thread, List<StackTraceElement[]>>();
+  @Override
+  protected StackStatistics dumpSamples() {
+    Map<Thread, List<StackTraceElement[]>> stacks = new HashMap<Thread, List<StackTraceElement[]>>();
+    Map<Thread, List<String>> labels = new HashMap<Thread, List<String>>();
+    Iterator<String> labelIt = sampleLabels.iterator();
     for (Map<Thread, StackTraceElement[]> sample : samples) {
+      String sampleLabel = labelIt.next();
       for (Map.Entry<Thread, StackTraceElement[]> entry : sample.entrySet()) {
         Thread t = entry.getKey();
 
@@ -74,21 +94,20 @@ public class StackSampler extends Sampler {
         if (!keep)
           continue;
 
-        List<StackTraceElement[]> list = retval.get(t);
+        List<StackTraceElement[]> list = stacks.get(t);
+        List<String> labelList = labels.get(t);
         if (list == null) {
           list = new ArrayList<StackTraceElement[]>();
-          retval.put(t, list);
+          stacks.put(t, list);
+          labelList = new ArrayList<String>();
+          labels.put(t, labelList);
         }
 
         list.add(stack);
+        labelList.add(sampleLabel);
       }
     }
-    return retval;
-  }
-
-  @Override
-  protected StackStatistics dumpSamples() {
-    return new StackStatistics(getSamples());
+    return new StackStatistics(stacks, labels);
   }
 
   /**
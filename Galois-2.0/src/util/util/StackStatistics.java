@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Statistics from stack samples. Computes hot methods from stack samples.
@@ -40,6 +41,7 @@ import java.util.Set;
  */
 public class StackStatistics extends Statistics {
   private final Map<Thread, List<StackTraceElement[]>> threadStacks;
+  private final Map<Thread, List<String>> threadLabels;
 
   /**
    * Creates stack statistics from a list of stack traces.
@@ -47,7 +49,19 @@ public class StackStatistics extends Statistics {
    * @param threadStacks  lists of stack traces for each thread
    */
   public StackStatistics(Map<Thread, List<StackTraceElement[]>> threadStacks) {
+    this(threadStacks, new HashMap<Thread, List<String>>());
+  }
+
+  /**
+   * Creates stack statistics from a list of labeled stack traces.
+   * 
+   * @param threadStacks  lists of stack traces for each thread
+   * @param threadLabels  labels of the stack traces in <code>threadStacks</code>, e.g.,
+   *                      the loop that was executing when the trace was taken
+   */
+  public StackStatistics(Map<Thread, List<StackTraceElement[]>> threadStacks, Map<Thread, List<String>> threadLabels) {
     this.threadStacks = threadStacks;
+    this.threadLabels = threadLabels;
   }
 
   @Override
@@ -74,6 +88,68 @@ public class StackStatistics extends Statistics {
     printTop(out);
   }
 
+  /**
+   * Prints stacks in collapsed format, one <code>label;thread;frame;...;frame count</code>
+   * line per distinct stack, as consumed by flame graph tools. Frames outside the
+   * sampled region are left out, as are leading frames whose class starts with one of
+   * the given prefixes except for the innermost of them, so stacks start at the frame
+   * that called client code (or the runtime frame that was waiting).
+   * 
+   * @param out             where to print
+   * @param filterPrefixes  class name prefixes of frames to leave out
+   */
+  public void dumpCollapsed(PrintStream out, String... filterPrefixes) {
+    Map<String, Integer> counts = new TreeMap<String, Integer>();
+    StringBuilder sb = new StringBuilder();
+
+    for (Map.Entry<Thread, List<StackTraceElement[]>> entry : threadStacks.entrySet()) {
+      String threadName = entry.getKey().getName().replace(';', '_');
+      List<String> labels = threadLabels.get(entry.getKey());
+      List<StackTraceElement[]> stacks = entry.getValue();
+
+      for (int j = 0; j < stacks.size(); j++) {
+        StackTraceElement[] stack = stacks.get(j);
+        int stopIndex = -1;
+        for (int i = 0; i < stack.length; i++) {
+          if (stack[i].getMethodName().startsWith(StackSampler.includeMethodName)) {
+            stopIndex = i;
+            break;
+          }
+        }
+
+        if (stopIndex <= 0)
+          continue;
+
+        int start = stopIndex - 1;
+        while (start > 0 && isFiltered(stack[start], filterPrefixes) && isFiltered(stack[start - 1], filterPrefixes)) {
+          start--;
+        }
+
+        sb.setLength(0);
+        sb.append(labels != null && j < labels.size() ? labels.get(j) : "null");
+        sb.append(';').append(threadName);
+        for (int i = start; i >= 0; i--) {
+          sb.append(';').append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+        }
+        addOne(counts, sb.toString());
+      }
+    }
+
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      out.printf("%s %d\n", entry.getKey(), entry.getValue());
+    }
+  }
+
+  private static boolean isFiltered(StackTraceElement frame, String[] filterPrefixes) {
+    String className = frame.getClassName();
+    for (String prefix : filterPrefixes) {
+      if (className.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void printTop(PrintStream out) {
     // TODO(ddn): Collate by threads and with statistics
     final Map<String, Integer> selfCounts = new HashMap<String, Integer>();
@@ -128,10 +204,24 @@ public class StackStatistics extends Statistics {
   public void merge(Object obj) {
     StackStatistics other = (StackStatistics) obj;
     for (Map.Entry<Thread, List<StackTraceElement[]>> entry : other.threadStacks.entrySet()) {
-      List<StackTraceElement[]> value = threadStacks.get(entry.getKey());
+      Thread t = entry.getKey();
+      List<StackTraceElement[]> value = threadStacks.get(t);
       if (value == null) {
         value = new ArrayList<StackTraceElement[]>();
-        threadStacks.put(entry.getKey(), value);
+        threadStacks.put(t, value);
+      }
+      // Keep labels aligned with stacks even if only one side has them
+      List<String> labels = threadLabels.get(t);
+      if (labels == null) {
+        labels = new ArrayList<String>();
+        threadLabels.put(t, labels);
+      }
+      List<String> otherLabels = other.threadLabels.get(t);
+      for (int i = labels.size(); i < value.size(); i++) {
+        labels.add("null");
+      }
+      for (int i = 0; i < entry.getValue().size(); i++) {
+        labels.add(otherLabels != null && i < otherLabels.size() ? otherLabels.get(i) : "null");
       }
       value.addAll(entry.getValue());
     }